@@ -0,0 +1,385 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import opennlp.tools.util.Span;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * score a text within a time budget, returning a partial result if the budget runs out
+ *
+ * a text longer than SINGLE_CHUNK_SIZE is cut into chunks of about CHUNK_SIZE characters (at
+ * a line break where possible) that are sentence detected and scored one at a time, so that a
+ * huge text never has to be detected as a whole before the first sentence is scored.  the
+ * deadline is checked before each chunk's detection, and before the parse and before the
+ * scoring of each sentence - a single sentence is never interrupted, so the overshoot is at
+ * most the cost of detecting one chunk or of one sentence.  a shorter text is detected as a
+ * whole and each of its sentences is then a chunk of its own, so it is sampled a sentence at
+ * a time rather than scored as one indivisible chunk.
+ *
+ * with the ADAPTIVE strategy the chunks are scored in order until the time taken so far shows
+ * the rest won't fit in the remaining budget; the remaining chunks are then scored in a random
+ * order, so whatever has been scored of them when time runs out is a uniform sample, and the
+ * average is estimated from the in-order part plus the sample scaled up to the text it stands for.
+ *
+ */
+public class DeadlineScorer {
+
+    /**
+     * the order to score the chunks of a text in
+     */
+    public enum Strategy {
+        PREFIX, // in order, a partial result covers the start of the text
+        SAMPLE, // in random order, a partial result is a uniform sample of the text
+        ADAPTIVE // in order while the projected time fits the budget, random order from there on
+    }
+
+    // texts up to this size are detected as a whole, exactly as VaderNLP.parse would, and sampled by sentence
+    private static final int SINGLE_CHUNK_SIZE = 64 * 1024;
+
+    // the size of the chunks of longer texts, and so the unit of sampling
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final Vader vader;
+    private final VaderNLP vaderNLP;
+
+    private Strategy strategy = Strategy.ADAPTIVE;
+    private long seed = 0x5eed;
+
+    /**
+     * @param vader an initialised vader
+     * @param vaderNLP an initialised nlp parser (not shared with other threads while in use here)
+     */
+    public DeadlineScorer( Vader vader, VaderNLP vaderNLP ) {
+        this.vader = vader;
+        this.vaderNLP = vaderNLP;
+    }
+
+    /**
+     * score a text with a time budget
+     * @param text the text to score
+     * @param budgetMillis the time budget in milliseconds
+     * @return the (possibly partial) result
+     * @throws IOException if the parser fails
+     */
+    public Result score( String text, long budgetMillis ) throws IOException {
+        return scoreUntil(text, System.nanoTime() + budgetMillis * 1000000L);
+    }
+
+    /**
+     * score a text until a deadline
+     * @param text the text to score
+     * @param deadlineNanos the deadline, in System.nanoTime() terms
+     * @return the (possibly partial) result
+     * @throws IOException if the parser fails
+     */
+    public Result scoreUntil( String text, long deadlineNanos ) throws IOException {
+        long startTime = System.nanoTime();
+        Result result = new Result();
+        result.textLength = text != null ? text.length() : 0;
+
+        Span[] sentenceArray = null; // the sentences of a text detected as a whole, one per chunk
+        int[] chunkArray; // chunk i is [chunkArray[i], chunkArray[i + 1])
+        if ( text != null && !text.isEmpty() && text.length() <= SINGLE_CHUNK_SIZE && System.nanoTime() - deadlineNanos < 0 ) {
+            sentenceArray = vaderNLP.getSentenceSpans(text);
+            chunkArray = sentenceChunks(sentenceArray, text.length());
+        } else {
+            chunkArray = chunks(text);
+        }
+        long rateStart = System.nanoTime(); // the time per character is measured from here
+        int chunkCount = chunkArray.length - 1;
+        int[] order = new int[chunkCount];
+        for ( int i = 0; i < chunkCount; i++ ) {
+            order[i] = i;
+        }
+        int sampleFrom = chunkCount; // order[sampleFrom..] is shuffled
+        if ( strategy == Strategy.SAMPLE ) {
+            sampleFrom = 0;
+            shuffle(order, 0);
+        }
+
+        // scored sentences and covered characters, in order and sampled
+        double[] prefixSum = new double[4];
+        double[] sampleSum = new double[4];
+        int prefixCount = 0;
+        int sampleCount = 0;
+        long prefixLength = 0;
+        long sampleLength = 0;
+        boolean outOfTime = false;
+
+        for ( int i = 0; i < chunkCount && !outOfTime; i++ ) {
+            long now = System.nanoTime();
+            if ( now - deadlineNanos >= 0 ) {
+                break;
+            }
+            if ( strategy == Strategy.ADAPTIVE && sampleFrom == chunkCount && prefixLength > 0 ) {
+                // switch to sampling once the rest, at the rate so far, would overrun the deadline
+                double projected = (double)(now - rateStart) / prefixLength * (result.textLength - prefixLength);
+                if ( projected > deadlineNanos - now ) {
+                    sampleFrom = i;
+                    shuffle(order, i);
+                }
+            }
+
+            int chunkStart = chunkArray[order[i]];
+            int chunkEnd = chunkArray[order[i] + 1];
+            int covered = chunkStart; // the end of the part of the chunk scored
+            Span[] spanArray; // the sentences of the chunk, relative to spanOffset
+            int spanOffset;
+            if ( sentenceArray != null ) {
+                spanArray = sentenceArray.length > 0 ? new Span[] {sentenceArray[order[i]]} : sentenceArray;
+                spanOffset = 0;
+            } else {
+                spanArray = vaderNLP.getSentenceSpans(text.substring(chunkStart, chunkEnd));
+                spanOffset = chunkStart;
+            }
+            for ( Span span : spanArray ) {
+                if ( System.nanoTime() - deadlineNanos >= 0 ) {
+                    outOfTime = true;
+                    break;
+                }
+                String sentence = text.substring(spanOffset + span.getStart(), spanOffset + span.getEnd());
+                VScore score = vader.prescreen(sentence);
+                if ( score == null ) {
+                    List<Token> tokenList = vaderNLP.parseSentence(sentence);
+                    if ( System.nanoTime() - deadlineNanos >= 0 ) {
+                        outOfTime = true; // parsed, but no time left to score it
+                        break;
+                    }
+                    score = vader.analyseSentence(tokenList);
+                }
+                covered = spanOffset + span.getEnd();
+                if ( i < sampleFrom ) {
+                    add(prefixSum, score);
+                    prefixCount++;
+                } else {
+                    add(sampleSum, score);
+                    sampleCount++;
+                }
+            }
+            if ( !outOfTime ) {
+                covered = chunkEnd; // including any space after the last sentence
+            }
+            if ( i < sampleFrom ) {
+                prefixLength += covered - chunkStart;
+            } else {
+                sampleLength += covered - chunkStart;
+            }
+        }
+
+        // the sample stands for all of the text not scored in order
+        result.scoredCount = prefixCount + sampleCount;
+        result.coveredLength = prefixLength + sampleLength;
+        result.sampled = sampleCount > 0 && result.coveredLength < result.textLength;
+        double[] sum = prefixSum;
+        double count = prefixCount;
+        if ( sampleCount > 0 ) {
+            double scale = (double)(result.textLength - prefixLength) / sampleLength;
+            for ( int j = 0; j < 4; j++ ) {
+                sum[j] += sampleSum[j] * scale;
+            }
+            count += sampleCount * scale;
+        }
+        if ( count > 0 ) {
+            result.average = new VScore(sum[0] / count, sum[1] / count, sum[2] / count, sum[3] / count);
+        }
+        if ( result.coveredLength == result.textLength ) {
+            result.sentenceCount = result.scoredCount;
+        } else if ( result.coveredLength > 0 ) {
+            result.sentenceCount = Math.max(result.scoredCount,
+                    Math.round((double)result.scoredCount / result.coveredLength * result.textLength));
+        }
+        result.elapsedNanos = System.nanoTime() - startTime;
+        return result;
+    }
+
+    /**
+     * cut a text into chunks
+     * @param text the text
+     * @return the chunk boundaries, from 0 to the length of the text
+     */
+    private static int[] chunks( String text ) {
+        if ( text == null || text.isEmpty() ) {
+            return new int[] {0};
+        }
+        if ( text.length() <= SINGLE_CHUNK_SIZE ) {
+            return new int[] {0, text.length()};
+        }
+        int[] boundaryArray = new int[text.length() / (CHUNK_SIZE / 2) + 2];
+        int count = 1;
+        int offset = 0;
+        while ( offset < text.length() ) {
+            int end = Math.min(text.length(), offset + CHUNK_SIZE);
+            if ( end < text.length() ) {
+                // end at a line break in the second half of the chunk, so sentences are rarely cut
+                int lineBreak = text.lastIndexOf('\n', end - 1);
+                if ( lineBreak >= offset + CHUNK_SIZE / 2 ) {
+                    end = lineBreak + 1;
+                }
+            }
+            boundaryArray[count++] = end;
+            offset = end;
+        }
+        return Arrays.copyOf(boundaryArray, count);
+    }
+
+    /**
+     * make each sentence of a text a chunk, together with the space after it (and the first, the space before it)
+     * @param sentenceArray the sentences of the text
+     * @param length the length of the text
+     * @return the chunk boundaries, from 0 to the length of the text
+     */
+    private static int[] sentenceChunks( Span[] sentenceArray, int length ) {
+        if ( sentenceArray.length == 0 ) {
+            return new int[] {0, length};
+        }
+        int[] boundaryArray = new int[sentenceArray.length + 1];
+        for ( int i = 1; i < sentenceArray.length; i++ ) {
+            boundaryArray[i] = sentenceArray[i].getStart();
+        }
+        boundaryArray[sentenceArray.length] = length;
+        return boundaryArray;
+    }
+
+    /**
+     * Fisher-Yates shuffle of array[from..]
+     */
+    private void shuffle( int[] array, int from ) {
+        Random random = new Random(seed);
+        for ( int i = array.length - 1; i > from; i-- ) {
+            int j = from + random.nextInt(i - from + 1);
+            int temp = array[i];
+            array[i] = array[j];
+            array[j] = temp;
+        }
+    }
+
+    private static void add( double[] sum, VScore score ) {
+        sum[0] += score.getPositive();
+        sum[1] += score.getNeutral();
+        sum[2] += score.getNegative();
+        sum[3] += score.getCompound();
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed the seed of the random order of the SAMPLE and ADAPTIVE strategies
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * the result of scoring a text within a budget
+     */
+    public static class Result {
+
+        private VScore average = new VScore();
+        private long sentenceCount;
+        private int scoredCount;
+        private boolean sampled;
+        private int textLength;
+        private long coveredLength;
+        private long elapsedNanos;
+
+        // pretty print
+        public String toString() {
+            return average.toString() + " scored " + scoredCount + " of " + (isComplete() ? "" : "~") + sentenceCount +
+                    " sentences" + (isComplete() ? "" : (sampled ? " (sampled)" : " (partial)"));
+        }
+
+        /**
+         * @return the mean score over the sentences of the text - estimated if not every sentence was scored
+         */
+        public VScore getAverage() {
+            return average;
+        }
+
+        /**
+         * @return the number of sentences of the text - estimated from the part covered if not complete
+         */
+        public long getSentenceCount() {
+            return sentenceCount;
+        }
+
+        public int getScoredCount() {
+            return scoredCount;
+        }
+
+        /**
+         * @return the fraction of the (estimated) sentences of the text that were scored
+         */
+        public double getCoverage() {
+            return sentenceCount > 0 ? (double)scoredCount / sentenceCount : (isComplete() ? 1.0 : 0.0);
+        }
+
+        /**
+         * @return true if every sentence of the text was scored
+         */
+        public boolean isComplete() {
+            return coveredLength == textLength;
+        }
+
+        /**
+         * @return true if part of the average is estimated from a random sample of the text
+         */
+        public boolean isSampled() {
+            return sampled;
+        }
+
+        public int getTextLength() {
+            return textLength;
+        }
+
+        /**
+         * @return the number of characters of the text that were scored
+         */
+        public long getCoveredLength() {
+            return coveredLength;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+    }
+
+}
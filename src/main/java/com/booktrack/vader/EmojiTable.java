@@ -0,0 +1,421 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * finds the emoticons (":-)", "</3") and emoji of a lexicon in raw text, so that the tokenizer
+ * can keep each one together as a single token
+ *
+ * the OpenNLP tokenizer splits emoticons into their punctuation and cuts emoji (surrogate pairs)
+ * in half.  this table is a trie over code points, flattened into sorted arrays like the
+ * LexiconFilter, and find() walks it directly over the text - no regex, and nothing allocated
+ * per character.  the rules:
+ *   an emoticon (all ascii) must stand alone - whitespace (or the start of the text) before it,
+ *   and whitespace, the end of the text or trailing . , ! ? ; after it.  A..Z match a..z.
+ *   an emoji matches anywhere, and takes any variation selector, skin tone modifier, keycap or
+ *   zero width joined emoji that follows it along into its token (scored as the first emoji).
+ * the longest match wins.  matched tokens are given the spelling of the lexicon term.
+ *
+ */
+public class EmojiTable {
+
+    private static final int VARIATION_SELECTOR = 0xFE0F;
+    private static final int ZERO_WIDTH_JOINER = 0x200D;
+    private static final int KEYCAP = 0x20E3;
+
+    // pairs of opening and closing brackets
+    private static final String BRACKETS = "()[]{}";
+
+    // per state: its children as a sorted label / target slice of labels[] and targets[]
+    private final int[] childStart;
+    private final int[] childCount;
+    private final int[] labels;
+    private final int[] targets;
+
+    // per state: the term ending here, or -1
+    private final int[] termIndex;
+    private final String[] termArray;
+
+    // the ascii characters an emoticon can start with
+    private final boolean[] asciiStart = new boolean[128];
+
+    /**
+     * build the table
+     * @param terms the emoticons and emoji to find, as spelled in the lexicon
+     */
+    public EmojiTable( Collection<String> terms ) {
+        List<TreeMap<Integer, Integer>> trie = new ArrayList<>();
+        List<Integer> termList = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        termList.add(-1);
+        List<String> termStrings = new ArrayList<>();
+        for ( String term : terms ) {
+            if ( term == null || term.isEmpty() ) {
+                continue;
+            }
+            int state = 0;
+            for ( int i = 0; i < term.length(); ) {
+                int codePoint = term.codePointAt(i);
+                i += Character.charCount(codePoint);
+                if ( codePoint == VARIATION_SELECTOR ) {
+                    continue; // optional in text, never part of the trie
+                }
+                codePoint = fold(codePoint);
+                Integer child = trie.get(state).get(codePoint);
+                if ( child == null ) {
+                    child = trie.size();
+                    trie.add(new TreeMap<>());
+                    termList.add(-1);
+                    trie.get(state).put(codePoint, child);
+                }
+                state = child;
+            }
+            if ( state != 0 && termList.get(state) < 0 ) {
+                termList.set(state, termStrings.size());
+                termStrings.add(term);
+            }
+        }
+
+        int stateCount = trie.size();
+        childStart = new int[stateCount];
+        childCount = new int[stateCount];
+        labels = new int[stateCount - 1];
+        targets = new int[stateCount - 1];
+        termIndex = new int[stateCount];
+        int offset = 0;
+        for ( int state = 0; state < stateCount; state++ ) {
+            childStart[state] = offset;
+            childCount[state] = trie.get(state).size();
+            for ( Map.Entry<Integer, Integer> entry : trie.get(state).entrySet() ) {
+                labels[offset] = entry.getKey();
+                targets[offset] = entry.getValue();
+                offset++;
+            }
+            termIndex[state] = termList.get(state);
+        }
+        termArray = termStrings.toArray(new String[0]);
+        for ( int i = 0; i < childCount[0]; i++ ) {
+            int label = labels[i];
+            if ( label < 128 ) {
+                asciiStart[label] = true;
+                if ( label >= 'a' && label <= 'z' ) {
+                    asciiStart[label - ('a' - 'A')] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * the table of the emoticons and emoji of a lexicon
+     * @param lexicon the lexicon
+     * @return its table
+     */
+    public static EmojiTable fromLexicon( Lexicon lexicon ) {
+        List<String> termList = new ArrayList<>();
+        lexicon.forEachTerm(term -> {
+            if ( isEmoticon(term) || isEmoji(term) ) {
+                termList.add(term);
+            }
+        });
+        return new EmojiTable(termList);
+    }
+
+    /**
+     * the table of the emoticons of vader_sentiment_lexicon.txt and the emoji of vader_emoji.txt
+     * @return the default table
+     * @throws IOException if the resources can't be read
+     */
+    public static EmojiTable load() throws IOException {
+        List<String> termList = new ArrayList<>();
+        for ( String resource : new String[] {"vader_sentiment_lexicon.txt", "vader_emoji.txt"} ) {
+            try ( InputStream in = EmojiTable.class.getResourceAsStream(resource) ) {
+                if ( in == null ) {
+                    throw new IOException(resource + " not found on class-path");
+                }
+                for ( String line : new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8).split("\n") ) {
+                    String term = line.split("\t")[0].trim();
+                    if ( isEmoticon(term) || isEmoji(term) ) {
+                        termList.add(term);
+                    }
+                }
+            }
+        }
+        return new EmojiTable(termList);
+    }
+
+    /**
+     * @param term a lexicon term
+     * @return true if the term is an ascii emoticon: mostly punctuation, at most two letters, none adjacent
+     */
+    public static boolean isEmoticon( String term ) {
+        if ( term.length() < 2 ) {
+            return false;
+        }
+        boolean punctuation = false;
+        int letters = 0;
+        boolean previousLetter = false;
+        for ( int i = 0; i < term.length(); i++ ) {
+            char ch = term.charAt(i);
+            if ( ch >= 128 || ch <= ' ' ) {
+                return false;
+            }
+            boolean letter = Character.isLetter(ch);
+            if ( letter && previousLetter ) {
+                return false;
+            }
+            letters += letter ? 1 : 0;
+            punctuation |= !letter && !Character.isDigit(ch);
+            previousLetter = letter;
+        }
+        return punctuation && letters <= 2;
+    }
+
+    /**
+     * @param term a lexicon term
+     * @return true if the term starts with a pictograph / symbol outside ascii
+     */
+    public static boolean isEmoji( String term ) {
+        if ( term.isEmpty() ) {
+            return false;
+        }
+        int codePoint = term.codePointAt(0);
+        return codePoint >= 0x2000 && !Character.isLetterOrDigit(codePoint) && !Character.isWhitespace(codePoint);
+    }
+
+    /**
+     * find the next emoticon or emoji in a text
+     * @param text the text
+     * @param from the offset to start looking at
+     * @param match receives the end of the match in [0] and its term index (see getTerm) in [1]
+     * @return the start of the match, or -1 if there is none
+     */
+    public int find( String text, int from, int[] match ) {
+        int length = text.length();
+        for ( int i = from; i < length; i++ ) {
+            char ch = text.charAt(i);
+            if ( ch < 128 ) {
+                if ( asciiStart[ch] && (i == 0 || Character.isWhitespace(text.charAt(i - 1))) && matchAt(text, i, match) ) {
+                    return i;
+                }
+            } else if ( ch >= 0x2000 && matchAt(text, i, match) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param word a token
+     * @return true if the token is exactly an emoticon or emoji of the table, as spelled in the lexicon
+     */
+    public boolean contains( String word ) {
+        if ( word.isEmpty() ) {
+            return false;
+        }
+        char first = word.charAt(0);
+        if ( first < 128 ? !asciiStart[first] : first < 0x2000 ) {
+            return false;
+        }
+        int state = 0;
+        for ( int i = 0; i < word.length(); ) {
+            int codePoint = word.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if ( codePoint == VARIATION_SELECTOR ) {
+                continue;
+            }
+            state = transition(state, fold(codePoint));
+            if ( state < 0 ) {
+                return false;
+            }
+        }
+        return termIndex[state] >= 0 && termArray[termIndex[state]].equals(word);
+    }
+
+    /**
+     * @param index a term index set by find()
+     * @return the term, as spelled in the lexicon
+     */
+    public String getTerm( int index ) {
+        return termArray[index];
+    }
+
+    /**
+     * @return the number of emoticons and emoji in the table
+     */
+    public int size() {
+        return termArray.length;
+    }
+
+    /**
+     * the longest match starting at a position
+     */
+    private boolean matchAt( String text, int start, int[] match ) {
+        int length = text.length();
+        boolean emoji = text.charAt(start) >= 128;
+        int state = 0;
+        int matchEnd = -1;
+        int matchTerm = -1;
+        int i = start;
+        while ( i < length ) {
+            int codePoint = text.codePointAt(i);
+            int next = transition(state, fold(codePoint));
+            if ( next < 0 ) {
+                if ( codePoint == VARIATION_SELECTOR && state != 0 ) {
+                    i += 1; // optional after an emoji, whether or not the lexicon spells it
+                    continue;
+                }
+                break;
+            }
+            state = next;
+            i += Character.charCount(codePoint);
+            if ( termIndex[state] >= 0 && (emoji || (isEmoticonEnd(text, i) && isStandalone(text, start, i))) ) {
+                matchEnd = i;
+                matchTerm = termIndex[state];
+            }
+        }
+        if ( matchEnd < 0 ) {
+            return false;
+        }
+        match[0] = emoji ? modifiersEnd(text, matchEnd) : matchEnd;
+        match[1] = matchTerm;
+        return true;
+    }
+
+    /**
+     * an emoticon has to end at whitespace or the end of the text, optionally followed by . , ! ? ;
+     */
+    private static boolean isEmoticonEnd( String text, int end ) {
+        int i = end;
+        while ( i < text.length() ) {
+            char ch = text.charAt(i);
+            if ( Character.isWhitespace(ch) ) {
+                return true;
+            }
+            if ( ch != '.' && ch != ',' && ch != '!' && ch != '?' && ch != ';' ) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    /**
+     * an emoticon of only brackets, letters and digits - "(8", "8)" - reads as ordinary
+     * punctuation in prose, so it is only taken as an emoticon if no word follows it and its
+     * bracket doesn't pair up with another bracket of the text
+     */
+    private static boolean isStandalone( String text, int start, int end ) {
+        boolean hasBracket = false;
+        for ( int i = start; i < end; i++ ) {
+            char ch = text.charAt(i);
+            if ( BRACKETS.indexOf(ch) >= 0 ) {
+                hasBracket = true;
+            } else if ( !((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9')) ) {
+                return true;
+            }
+        }
+        if ( !hasBracket ) {
+            return true;
+        }
+        for ( int i = end; i < text.length(); i++ ) {
+            if ( Character.isLetterOrDigit(text.charAt(i)) ) {
+                return false;
+            }
+        }
+        for ( int i = start; i < end; i++ ) {
+            int bracket = BRACKETS.indexOf(text.charAt(i));
+            if ( bracket >= 0 ) {
+                // an opening bracket at an even index, its closing bracket after it
+                boolean paired = (bracket & 1) == 0 ?
+                        text.indexOf(BRACKETS.charAt(bracket + 1), end) >= 0 :
+                        text.lastIndexOf(BRACKETS.charAt(bracket - 1), start - 1) >= 0;
+                if ( paired ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the end of the variation selectors, skin tones, keycaps and zero width joined
+     * code points that follow an emoji ending at end
+     */
+    private static int modifiersEnd( String text, int end ) {
+        int i = end;
+        while ( i < text.length() ) {
+            int codePoint = text.codePointAt(i);
+            if ( codePoint == VARIATION_SELECTOR || codePoint == KEYCAP || (codePoint >= 0x1F3FB && codePoint <= 0x1F3FF) ) {
+                i += Character.charCount(codePoint);
+            } else if ( codePoint == ZERO_WIDTH_JOINER && i + 1 < text.length() && !Character.isWhitespace(text.charAt(i + 1)) ) {
+                i += 1;
+                i += Character.charCount(text.codePointAt(i));
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * follow the trie edge for codePoint out of state
+     * @return the next state or -1 if there is no such edge
+     */
+    private int transition( int state, int codePoint ) {
+        int low = childStart[state];
+        int high = low + childCount[state] - 1;
+        while ( low <= high ) {
+            int mid = (low + high) >>> 1;
+            int label = labels[mid];
+            if ( label < codePoint ) {
+                low = mid + 1;
+            } else if ( label > codePoint ) {
+                high = mid - 1;
+            } else {
+                return targets[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * lower-case A..Z, leave everything else alone
+     */
+    private static int fold( int codePoint ) {
+        if ( codePoint >= 'A' && codePoint <= 'Z' ) {
+            return codePoint + ('a' - 'A');
+        }
+        return codePoint;
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * why a sentence scored what it did - every rule that changed a word's valence (or the
+ * sentence sum), recorded by Vader.analyseSentence(sentence, trace) in the same pass
+ *
+ * the trace is a set of growable primitive arrays, re-used from sentence to sentence
+ * (analyseSentence resets it), so a trace allocates nothing once it has grown to size.
+ * token indexes are positions in the sentence as passed in, punctuation included.
+ *
+ */
+public class ExplainTrace {
+
+    /**
+     * the rules of the vader algorithm
+     */
+    public enum Rule {
+        VALENCE, // the lexicon valence of the word
+        PHRASE, // the lexicon valence of a phrase starting at the word
+        CAPS, // the word is in ALLCAPS while others aren't
+        BOOSTER, // a booster / dampener word up to 3 words before
+        NEVER_SO, // "never so" / "never this" before the word
+        NEGATION, // a negation 2 or 3 words before
+        IDIOM, // an idiom starting at the word replaced the valence
+        IDIOM_BOOSTER, // a booster phrase starting at the word
+        LEAST, // "least" before the word
+        BUT, // the word is before (0.5) or after (1.5) "but"
+        EXCLAMATION, // exclamation marks amplify the sentence sum
+        QUESTION // question marks amplify the sentence sum
+    }
+
+    private static final Rule[] RULES = Rule.values();
+
+    private int[] tokenArray = new int[16];
+    private byte[] ruleArray = new byte[16];
+    private int[] sourceArray = new int[16];
+    private double[] beforeArray = new double[16];
+    private double[] afterArray = new double[16];
+    private int size = 0;
+
+    private List<Token> sentence;
+    private int[] originalIndex = new int[16]; // filtered word index -> sentence index
+
+    public ExplainTrace() {
+    }
+
+    /**
+     * start the trace of a sentence
+     * @param sentence the sentence as passed to analyseSentence
+     * @param words the sentence without punctuation, as the rules index it
+     * @return the sentence index of each word
+     */
+    int[] begin( List<Token> sentence, List<Token> words ) {
+        this.sentence = sentence;
+        this.size = 0;
+        if ( originalIndex.length < words.size() ) {
+            originalIndex = new int[Math.max(words.size(), originalIndex.length * 2)];
+        }
+        int w = 0;
+        for ( int j = 0; j < sentence.size() && w < words.size(); j++ ) {
+            if ( sentence.get(j) == words.get(w) ) {
+                originalIndex[w++] = j;
+            }
+        }
+        return originalIndex;
+    }
+
+    /**
+     * @param word the index of a word of the sentence without punctuation
+     * @return its sentence index
+     */
+    int getWordToken( int word ) {
+        return originalIndex[word];
+    }
+
+    /**
+     * record a rule applied to a token
+     * @param token the sentence index of the token (-1 for the sentence sum)
+     * @param rule the rule
+     * @param source the sentence index of the token that triggered the rule (-1 if none)
+     * @param before the value before the rule
+     * @param after the value after the rule
+     */
+    void record( int token, Rule rule, int source, double before, double after ) {
+        if ( size == tokenArray.length ) {
+            int capacity = size * 2;
+            tokenArray = Arrays.copyOf(tokenArray, capacity);
+            ruleArray = Arrays.copyOf(ruleArray, capacity);
+            sourceArray = Arrays.copyOf(sourceArray, capacity);
+            beforeArray = Arrays.copyOf(beforeArray, capacity);
+            afterArray = Arrays.copyOf(afterArray, capacity);
+        }
+        tokenArray[size] = token;
+        ruleArray[size] = (byte)rule.ordinal();
+        sourceArray[size] = source;
+        beforeArray[size] = before;
+        afterArray[size] = after;
+        size++;
+    }
+
+    /**
+     * @return the number of rules recorded
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i the entry
+     * @return the sentence index of the token the rule changed, -1 for the sentence sum
+     */
+    public int getToken( int i ) {
+        return tokenArray[i];
+    }
+
+    public Rule getRule( int i ) {
+        return RULES[ruleArray[i]];
+    }
+
+    /**
+     * @param i the entry
+     * @return the sentence index of the token that triggered the rule, -1 if none
+     */
+    public int getSource( int i ) {
+        return sourceArray[i];
+    }
+
+    public double getBefore( int i ) {
+        return beforeArray[i];
+    }
+
+    public double getAfter( int i ) {
+        return afterArray[i];
+    }
+
+    // pretty print, one rule per line
+    public String toString() {
+        DecimalFormat df4 = new DecimalFormat("#.####");
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < size; i++ ) {
+            sb.append(tokenArray[i] >= 0 ? sentence.get(tokenArray[i]).getValue() : "<sum>");
+            sb.append(' ').append(getRule(i));
+            if ( sourceArray[i] >= 0 ) {
+                sb.append(" (").append(sentence.get(sourceArray[i]).getValue()).append(')');
+            }
+            sb.append(": ").append(df4.format(beforeArray[i])).append(" -> ").append(df4.format(afterArray[i])).append('\n');
+        }
+        return sb.toString();
+    }
+
+}
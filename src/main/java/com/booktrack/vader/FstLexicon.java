@@ -0,0 +1,238 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * a lexicon stored as a minimal acyclic automaton outside the java heap, for domain
+ * lexicons of millions of words and n-gram phrases
+ *
+ * the automaton is built by FstLexiconBuilder, and either memory-mapped from file (open) or
+ * kept in a direct buffer (load).  terms are matched byte by byte over their utf-8 encoding,
+ * each state has its arcs sorted by label so a transition is a binary search, and nothing
+ * is allocated per lookup.  phrases are matched longest first over consecutive tokens.
+ *
+ * only absolute reads are made on the buffer, so a lexicon can be shared between threads.
+ *
+ */
+public class FstLexicon implements Lexicon {
+
+    static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+    static final int ARC_SIZE = 1 + 4;
+    static final int FLAG_FINAL = 1;
+
+    private final ByteBuffer data;
+    private final long termCount;
+    private final int maxPhraseLength;
+    private final int root;
+
+    private FstLexicon( ByteBuffer data, long termCount, int maxPhraseLength, int root ) {
+        this.data = data;
+        this.termCount = termCount;
+        this.maxPhraseLength = maxPhraseLength;
+        this.root = root;
+    }
+
+    /**
+     * memory-map a lexicon written by FstLexiconBuilder
+     * @param file the lexicon file
+     * @return the lexicon
+     * @throws IOException if the file can't be read or isn't a lexicon
+     */
+    public static FstLexicon open( File file ) throws IOException {
+        try ( RandomAccessFile raf = new RandomAccessFile(file, "r");
+              FileChannel channel = raf.getChannel() ) {
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * use a lexicon in a buffer (e.g. a direct buffer from FstLexiconBuilder.build())
+     * @param buffer the lexicon, from its position
+     * @return the lexicon
+     * @throws IOException if the buffer doesn't hold a lexicon
+     */
+    public static FstLexicon load( ByteBuffer buffer ) throws IOException {
+        ByteBuffer header = buffer.duplicate();
+        if ( header.remaining() < HEADER_SIZE || header.getInt() != FstLexiconBuilder.MAGIC ) {
+            throw new IOException("not an fst lexicon");
+        }
+        if ( header.getInt() != FstLexiconBuilder.VERSION ) {
+            throw new IOException("unsupported fst lexicon version");
+        }
+        long termCount = header.getLong();
+        int maxPhraseLength = header.getInt();
+        int root = header.getInt();
+        int dataLength = header.getInt();
+        if ( header.remaining() < dataLength || root < 0 || root >= dataLength ) {
+            throw new IOException("truncated fst lexicon");
+        }
+        ByteBuffer data = header.slice();
+        data.limit(dataLength);
+        return new FstLexicon(data, termCount, maxPhraseLength, root);
+    }
+
+    @Override
+    public double getValence( String word ) {
+        int state = walk(root, word);
+        if ( state >= 0 && isFinal(state) ) {
+            return data.getDouble(state + 1);
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public long size() {
+        return termCount;
+    }
+
+    @Override
+    public int getMaxPhraseLength() {
+        return maxPhraseLength;
+    }
+
+    @Override
+    public int matchPhrase( List<Token> sentence, int start, double[] valence ) {
+        int phraseLength = 0;
+        int state = root;
+        for ( int w = 0; w < maxPhraseLength && start + w < sentence.size(); w++ ) {
+            if ( w > 0 ) {
+                state = next(state, ' ');
+                if ( state < 0 ) {
+                    break;
+                }
+            }
+            state = walk(state, sentence.get(start + w).getValue().toLowerCase());
+            if ( state < 0 ) {
+                break;
+            }
+            if ( w > 0 && isFinal(state) ) {
+                phraseLength = w + 1;
+                valence[0] = data.getDouble(state + 1);
+            }
+        }
+        return phraseLength;
+    }
+
+    @Override
+    public void forEachTerm( Consumer<String> consumer ) {
+        visit(root, new byte[64], 0, consumer);
+    }
+
+    /**
+     * depth first over the automaton, in byte order
+     */
+    private byte[] visit( int state, byte[] term, int length, Consumer<String> consumer ) {
+        if ( isFinal(state) ) {
+            consumer.accept(new String(term, 0, length, StandardCharsets.UTF_8));
+        }
+        int arcs = arcsStart(state);
+        int arcCount = data.getShort(arcs - 2) & 0xffff;
+        for ( int i = 0; i < arcCount; i++ ) {
+            if ( length == term.length ) {
+                term = Arrays.copyOf(term, length * 2);
+            }
+            term[length] = data.get(arcs + i * ARC_SIZE);
+            term = visit(data.getInt(arcs + i * ARC_SIZE + 1), term, length + 1, consumer);
+        }
+        return term;
+    }
+
+    /**
+     * follow the utf-8 bytes of a string (unpaired surrogates as '?', like String.getBytes)
+     * @return the state reached, or -1
+     */
+    private int walk( int state, String str ) {
+        for ( int i = 0; i < str.length() && state >= 0; i++ ) {
+            char ch = str.charAt(i);
+            if ( ch < 0x80 ) {
+                state = next(state, ch);
+            } else if ( ch < 0x800 ) {
+                state = next(state, 0xc0 | (ch >> 6));
+                state = next(state, 0x80 | (ch & 0x3f));
+            } else if ( Character.isHighSurrogate(ch) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1)) ) {
+                int cp = Character.toCodePoint(ch, str.charAt(++i));
+                state = next(state, 0xf0 | (cp >> 18));
+                state = next(state, 0x80 | ((cp >> 12) & 0x3f));
+                state = next(state, 0x80 | ((cp >> 6) & 0x3f));
+                state = next(state, 0x80 | (cp & 0x3f));
+            } else if ( Character.isSurrogate(ch) ) {
+                state = next(state, '?');
+            } else {
+                state = next(state, 0xe0 | (ch >> 12));
+                state = next(state, 0x80 | ((ch >> 6) & 0x3f));
+                state = next(state, 0x80 | (ch & 0x3f));
+            }
+        }
+        return state;
+    }
+
+    /**
+     * binary search the arcs of a state for a label
+     * @return the target state, or -1 (also if state is -1)
+     */
+    private int next( int state, int label ) {
+        if ( state < 0 ) {
+            return -1;
+        }
+        int arcs = arcsStart(state);
+        int low = 0;
+        int high = (data.getShort(arcs - 2) & 0xffff) - 1;
+        while ( low <= high ) {
+            int mid = (low + high) >>> 1;
+            int midLabel = data.get(arcs + mid * ARC_SIZE) & 0xff;
+            if ( midLabel < label ) {
+                low = mid + 1;
+            } else if ( midLabel > label ) {
+                high = mid - 1;
+            } else {
+                return data.getInt(arcs + mid * ARC_SIZE + 1);
+            }
+        }
+        return -1;
+    }
+
+    private boolean isFinal( int state ) {
+        return (data.get(state) & FLAG_FINAL) != 0;
+    }
+
+    /**
+     * @return the offset of the first arc of a state (the arc count is the short before it)
+     */
+    private int arcsStart( int state ) {
+        return state + 1 + (isFinal(state) ? 8 : 0) + 2;
+    }
+
+}
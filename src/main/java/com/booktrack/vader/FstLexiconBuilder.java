@@ -0,0 +1,317 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * builds an FstLexicon - a minimal acyclic automaton over the utf-8 bytes of the terms,
+ * with the valence of each term on its final state
+ *
+ * the terms are sorted and added one at a time, and every state no longer on the path of the
+ * last term is frozen, i.e. merged with an identical state written before or written out itself
+ * (Daciuk et al., incremental construction of minimal acyclic finite-state automata).  states
+ * are written children first, so only the path of the last term is ever held as objects.
+ *
+ */
+public class FstLexiconBuilder {
+
+    static final int MAGIC = 0x56465354; // "VFST"
+    static final int VERSION = 1;
+
+    // the terms and their valences, in the order added
+    private final List<byte[]> termList = new ArrayList<>();
+    private double[] valenceArray = new double[1024];
+
+    public FstLexiconBuilder() {
+    }
+
+    /**
+     * add a term, a later valence for the same term replaces an earlier one
+     * @param term the word or phrase, lower-cased and its words separated by single spaces
+     * @param valence its valence
+     */
+    public void add( String term, double valence ) {
+        String normalised = String.join(" ", term.trim().toLowerCase().split("\\s+"));
+        if ( normalised.length() == 0 ) {
+            return;
+        }
+        if ( termList.size() == valenceArray.length ) {
+            valenceArray = Arrays.copyOf(valenceArray, valenceArray.length * 2);
+        }
+        valenceArray[termList.size()] = valence;
+        termList.add(normalised.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * add all the terms of a lexicon with a term and valence per line, separated by a tab
+     * (the format of vader_sentiment_lexicon.txt, further columns are ignored)
+     * @param in the lexicon
+     * @throws IOException if the lexicon can't be read
+     */
+    public void addAll( InputStream in ) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ( (line = reader.readLine()) != null ) {
+            String[] items = line.split("\t");
+            if ( items.length > 1 ) {
+                try {
+                    add(items[0], Double.parseDouble(items[1].trim()));
+                } catch ( NumberFormatException ex ) {
+                    throw new IOException("invalid valence in lexicon line: " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of terms added so far (including duplicates)
+     */
+    public int size() {
+        return termList.size();
+    }
+
+    /**
+     * build the lexicon into a direct (off-heap) buffer
+     * @return the lexicon
+     * @throws IOException if the automaton is too large
+     */
+    public FstLexicon build() throws IOException {
+        byte[] data = compile();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        return FstLexicon.load(buffer);
+    }
+
+    /**
+     * write the lexicon to file, for FstLexicon.open() to memory-map
+     * @param file the file to write
+     * @throws IOException if the write fails
+     */
+    public void write( File file ) throws IOException {
+        byte[] data = compile();
+        try ( OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16) ) {
+            out.write(data);
+        }
+    }
+
+    /**
+     * layout: header | states (each: flags, valence if final, arc count, arcs of label + target)
+     */
+    private byte[] compile() throws IOException {
+
+        // sort by unsigned bytes, equal terms keep the order they were added in
+        Integer[] order = new Integer[termList.size()];
+        for ( int i = 0; i < order.length; i++ ) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareBytes(termList.get(a), termList.get(b)));
+
+        StateWriter writer = new StateWriter();
+        List<BuildState> path = new ArrayList<>();
+        path.add(new BuildState());
+        byte[] previous = new byte[0];
+        long termCount = 0;
+        int maxPhraseLength = 0;
+
+        for ( int k = 0; k < order.length; k++ ) {
+            byte[] term = termList.get(order[k]);
+            // only the last of equal terms counts
+            if ( k + 1 < order.length && compareBytes(term, termList.get(order[k + 1])) == 0 ) {
+                continue;
+            }
+            int prefix = 0;
+            while ( prefix < previous.length && prefix < term.length && previous[prefix] == term[prefix] ) {
+                prefix++;
+            }
+            freezePath(path, writer, previous.length, prefix);
+            for ( int d = prefix; d < term.length; d++ ) {
+                if ( path.size() <= d + 1 ) {
+                    path.add(new BuildState());
+                } else {
+                    path.get(d + 1).reset();
+                }
+                path.get(d).addArc(term[d]);
+            }
+            path.get(term.length).setFinal(valenceArray[order[k]]);
+
+            termCount++;
+            int words = 1;
+            for ( byte b : term ) {
+                if ( b == ' ' ) {
+                    words++;
+                }
+            }
+            maxPhraseLength = Math.max(maxPhraseLength, words);
+            previous = term;
+        }
+        freezePath(path, writer, previous.length, 0);
+        int root = writer.freeze(path.get(0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(FstLexicon.HEADER_SIZE + writer.size);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(VERSION);
+        dataOut.writeLong(termCount);
+        dataOut.writeInt(Math.max(1, maxPhraseLength));
+        dataOut.writeInt(root);
+        dataOut.writeInt(writer.size);
+        dataOut.write(writer.data, 0, writer.size);
+        dataOut.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * freeze the states of the path deeper than depth, pointing their parents at the frozen copies
+     */
+    private static void freezePath( List<BuildState> path, StateWriter writer, int length, int depth ) throws IOException {
+        for ( int d = length; d > depth; d-- ) {
+            path.get(d - 1).setLastTarget(writer.freeze(path.get(d)));
+        }
+    }
+
+    static int compareBytes( byte[] a, byte[] b ) {
+        int length = Math.min(a.length, b.length);
+        for ( int i = 0; i < length; i++ ) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if ( diff != 0 ) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * a state on the path of the last term added
+     */
+    private static class BuildState {
+
+        boolean isFinal;
+        double valence;
+        byte[] labels = new byte[4];
+        int[] targets = new int[4];
+        int arcCount;
+
+        void reset() {
+            isFinal = false;
+            valence = 0.0;
+            arcCount = 0;
+        }
+
+        void setFinal( double valence ) {
+            this.isFinal = true;
+            this.valence = valence;
+        }
+
+        void addArc( byte label ) {
+            if ( arcCount == labels.length ) {
+                labels = Arrays.copyOf(labels, arcCount * 2);
+                targets = Arrays.copyOf(targets, arcCount * 2);
+            }
+            labels[arcCount] = label;
+            targets[arcCount] = -1;
+            arcCount++;
+        }
+
+        void setLastTarget( int target ) {
+            targets[arcCount - 1] = target;
+        }
+
+        /**
+         * @return the state as it is written to the lexicon
+         */
+        byte[] encode() {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + (isFinal ? 8 : 0) + 2 + arcCount * FstLexicon.ARC_SIZE);
+            buffer.put((byte)(isFinal ? FstLexicon.FLAG_FINAL : 0));
+            if ( isFinal ) {
+                buffer.putDouble(valence);
+            }
+            buffer.putShort((short)arcCount);
+            for ( int i = 0; i < arcCount; i++ ) {
+                buffer.put(labels[i]);
+                buffer.putInt(targets[i]);
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * appends frozen states, sharing every state with one already written
+     */
+    private static class StateWriter {
+
+        // encoded state -> its address
+        private final Map<StateKey, Integer> registerMap = new HashMap<>();
+
+        byte[] data = new byte[1 << 16];
+        int size = 0;
+
+        int freeze( BuildState state ) throws IOException {
+            StateKey key = new StateKey(state.encode());
+            Integer address = registerMap.get(key);
+            if ( address != null ) {
+                return address;
+            }
+            if ( (long)size + key.bytes.length > Integer.MAX_VALUE - 8 ) {
+                throw new IOException("lexicon automaton exceeds 2GB");
+            }
+            if ( size + key.bytes.length > data.length ) {
+                data = Arrays.copyOf(data, (int)Math.min(Integer.MAX_VALUE - 8, Math.max((long)data.length * 2, size + key.bytes.length)));
+            }
+            System.arraycopy(key.bytes, 0, data, size, key.bytes.length);
+            registerMap.put(key, size);
+            size += key.bytes.length;
+            return size - key.bytes.length;
+        }
+    }
+
+    /**
+     * encoded state bytes as a hash key
+     */
+    private static class StateKey {
+
+        final byte[] bytes;
+        final int hash;
+
+        StateKey( byte[] bytes ) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals( Object other ) {
+            return other instanceof StateKey && Arrays.equals(bytes, ((StateKey)other).bytes);
+        }
+    }
+
+}
@@ -0,0 +1,352 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import opennlp.tools.util.Span;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * a document that keeps its sentence scores up to date under text edits
+ *
+ * every sentence keeps its offsets, a 64 bit content hash and its score.  an edit only
+ * re-runs sentence detection over the edited sentences plus a few sentences either side
+ * (the sentence boundaries there may move), and only sentences whose content hash isn't
+ * one of the replaced sentences' are scored again.  the document totals are kept in
+ * fixed point so that they can be updated by subtracting the old and adding the new
+ * sentence scores without drifting, in time proportional to the size of the change.
+ *
+ */
+public class IncrementalDocument {
+
+    // the fixed point scale of the running totals
+    private static final double SCALE = 1e12;
+
+    private final Vader vader;
+    private final VaderNLP vaderNLP;
+
+    private final StringBuilder text;
+    private final ArrayList<SentenceEntry> sentenceList = new ArrayList<>();
+
+    // running totals over all sentences, in fixed point
+    private long positiveSum;
+    private long neutralSum;
+    private long negativeSum;
+    private long compoundSum;
+
+    // statistics of the last edit
+    private int lastDetectedCount;
+    private int lastScoredCount;
+
+    /**
+     * setup and score a document
+     * @param vader an initialised vader
+     * @param vaderNLP an initialised nlp parser (not shared with other threads while in use here)
+     * @param text the initial text of the document
+     * @throws IOException if the parser fails
+     */
+    public IncrementalDocument( Vader vader, VaderNLP vaderNLP, String text ) throws IOException {
+        this.vader = vader;
+        this.vaderNLP = vaderNLP;
+        this.text = new StringBuilder(text != null ? text : "");
+        List<SentenceEntry> entryList = detect(0, this.text.length());
+        score(entryList, new HashMap<>());
+        sentenceList.addAll(entryList);
+        for ( SentenceEntry entry : entryList ) {
+            add(entry.score, 1);
+        }
+    }
+
+    /**
+     * apply a text edit and rescore the sentences it affects
+     * @param offset where the edit starts in the current text
+     * @param removedLength the number of characters removed at offset
+     * @param insertedText the text inserted at offset (may be null or empty)
+     * @return the number of sentences that had to be scored again
+     * @throws IOException if the parser fails
+     */
+    public int edit( int offset, int removedLength, String insertedText ) throws IOException {
+        if ( offset < 0 || removedLength < 0 || offset + removedLength > text.length() ) {
+            throw new IndexOutOfBoundsException("edit [" + offset + ", " + (offset + removedLength) +
+                    ") outside document of length " + text.length());
+        }
+        String inserted = insertedText != null ? insertedText : "";
+        int delta = inserted.length() - removedLength;
+
+        // the sentences touched by the edit, and one more either side
+        int first = 0;
+        int last = sentenceList.size() - 1;
+        if ( !sentenceList.isEmpty() ) {
+            first = Math.max(0, firstEndingAtOrAfter(offset) - 1);
+            last = Math.min(sentenceList.size() - 1, lastStartingAtOrBefore(offset + removedLength) + 1);
+        }
+        String removed = text.substring(offset, offset + removedLength);
+        text.replace(offset, offset + removedLength, inserted);
+
+        // the new sentences are detected and scored before anything else changes - if the
+        // parser fails, the text is put back and the document is as it was before the edit
+        List<SentenceEntry> entryList;
+        int scoredCount;
+        try {
+            // the detector decides the first and last boundary of a text differently, so it is run
+            // with one sentence of context either side - if the new sentences don't line up with the
+            // boundaries of that context, the region grows by another sentence and is detected again
+            while ( true ) {
+                int regionStart = first > 0 ? sentenceList.get(first).start : 0;
+                int regionEnd = last < sentenceList.size() - 1 ? sentenceList.get(last).end + delta : text.length();
+                regionStart = Math.min(regionStart, offset);
+                regionEnd = Math.max(regionEnd, offset + inserted.length());
+                int contextStart = first > 0 ? sentenceList.get(first - 1).start : 0;
+                int contextEnd = last + 1 < sentenceList.size() ? sentenceList.get(last + 1).end + delta : text.length();
+
+                entryList = new ArrayList<>();
+                boolean aligned = true;
+                for ( SentenceEntry entry : detect(contextStart, contextEnd) ) {
+                    if ( entry.start < regionStart && entry.end > regionStart && first > 0 ) {
+                        first--;
+                        aligned = false;
+                        break;
+                    }
+                    if ( entry.start < regionEnd && entry.end > regionEnd && last < sentenceList.size() - 1 ) {
+                        last++;
+                        aligned = false;
+                        break;
+                    }
+                    if ( entry.start >= regionStart && entry.end <= regionEnd ) {
+                        entryList.add(entry);
+                    }
+                }
+                if ( aligned ) {
+                    break;
+                }
+            }
+
+            // the scores of the sentences being replaced, by content hash
+            Map<Long, VScore> previousScores = new HashMap<>();
+            for ( int i = first; i <= last && i < sentenceList.size(); i++ ) {
+                SentenceEntry entry = sentenceList.get(i);
+                previousScores.put(entry.hash, entry.score);
+            }
+            scoredCount = score(entryList, previousScores);
+
+        } catch ( IOException | RuntimeException ex ) {
+            text.replace(offset, offset + inserted.length(), removed);
+            throw ex;
+        }
+
+        for ( int i = first; i <= last && i < sentenceList.size(); i++ ) {
+            add(sentenceList.get(i).score, -1);
+        }
+        for ( SentenceEntry entry : entryList ) {
+            add(entry.score, 1);
+        }
+        lastDetectedCount = entryList.size();
+        lastScoredCount = scoredCount;
+
+        // swap the old sentences for the new and move everything after them
+        List<SentenceEntry> replaced = sentenceList.subList(first, Math.min(last + 1, sentenceList.size()));
+        replaced.clear();
+        replaced.addAll(entryList);
+        for ( int i = first + entryList.size(); i < sentenceList.size(); i++ ) {
+            SentenceEntry entry = sentenceList.get(i);
+            entry.start += delta;
+            entry.end += delta;
+        }
+        return lastScoredCount;
+    }
+
+    /**
+     * @return the mean score over all sentences of the document
+     */
+    public VScore getAverage() {
+        int count = sentenceList.size();
+        if ( count == 0 ) {
+            return new VScore();
+        }
+        return new VScore(positiveSum / SCALE / count, neutralSum / SCALE / count,
+                negativeSum / SCALE / count, compoundSum / SCALE / count);
+    }
+
+    /**
+     * @return the sum of all sentence scores of the document
+     */
+    public VScore getTotal() {
+        return new VScore(positiveSum / SCALE, neutralSum / SCALE, negativeSum / SCALE, compoundSum / SCALE);
+    }
+
+    public String getText() {
+        return text.toString();
+    }
+
+    public int getSentenceCount() {
+        return sentenceList.size();
+    }
+
+    public String getSentenceText( int index ) {
+        SentenceEntry entry = sentenceList.get(index);
+        return text.substring(entry.start, entry.end);
+    }
+
+    public int getSentenceStart( int index ) {
+        return sentenceList.get(index).start;
+    }
+
+    public int getSentenceEnd( int index ) {
+        return sentenceList.get(index).end;
+    }
+
+    public VScore getSentenceScore( int index ) {
+        return sentenceList.get(index).score;
+    }
+
+    /**
+     * @return the number of sentences the last edit's sentence detection produced
+     */
+    public int getLastDetectedCount() {
+        return lastDetectedCount;
+    }
+
+    /**
+     * @return the number of sentences the last edit scored again
+     */
+    public int getLastScoredCount() {
+        return lastScoredCount;
+    }
+
+    /**
+     * run sentence detection over part of the text
+     * @param start the start of the region
+     * @param end the end of the region
+     * @return the sentences found, with offsets into the whole text
+     */
+    private List<SentenceEntry> detect( int start, int end ) {
+        List<SentenceEntry> entryList = new ArrayList<>();
+        if ( end > start ) {
+            String region = text.substring(start, end);
+            for ( Span span : vaderNLP.getSentenceSpans(region) ) {
+                SentenceEntry entry = new SentenceEntry();
+                entry.start = start + span.getStart();
+                entry.end = start + span.getEnd();
+                entry.hash = contentHash(text, entry.start, entry.end);
+                entryList.add(entry);
+            }
+        }
+        return entryList;
+    }
+
+    /**
+     * score new sentences, re-using the score of a previous sentence with the same content
+     * @param entryList the sentences to score
+     * @param previousScores scores by content hash that can be re-used
+     * @return the number of sentences that had to be scored
+     * @throws IOException if the parser fails
+     */
+    private int score( List<SentenceEntry> entryList, Map<Long, VScore> previousScores ) throws IOException {
+        int scored = 0;
+        for ( SentenceEntry entry : entryList ) {
+            VScore score = previousScores.get(entry.hash);
+            if ( score == null ) {
+                score = vader.analyseSentence(text.substring(entry.start, entry.end), vaderNLP);
+                scored++;
+            }
+            entry.score = score;
+        }
+        return scored;
+    }
+
+    /**
+     * add (sign 1) or remove (sign -1) a sentence score from the totals
+     */
+    private void add( VScore score, int sign ) {
+        positiveSum += sign * Math.round(score.getPositive() * SCALE);
+        neutralSum += sign * Math.round(score.getNeutral() * SCALE);
+        negativeSum += sign * Math.round(score.getNegative() * SCALE);
+        compoundSum += sign * Math.round(score.getCompound() * SCALE);
+    }
+
+    /**
+     * @return the index of the first sentence with end >= offset, or the last sentence
+     */
+    private int firstEndingAtOrAfter( int offset ) {
+        int low = 0;
+        int high = sentenceList.size() - 1;
+        while ( low < high ) {
+            int mid = (low + high) >>> 1;
+            if ( sentenceList.get(mid).end < offset ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the last sentence with start <= offset, or the first sentence
+     */
+    private int lastStartingAtOrBefore( int offset ) {
+        int low = 0;
+        int high = sentenceList.size() - 1;
+        while ( low < high ) {
+            int mid = (low + high + 1) >>> 1;
+            if ( sentenceList.get(mid).start > offset ) {
+                high = mid - 1;
+            } else {
+                low = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of part of a text
+     * @param text the text
+     * @param start start offset
+     * @param end end offset (exclusive)
+     * @return the hash
+     */
+    static long contentHash( CharSequence text, int start, int end ) {
+        long hash = 0xcbf29ce484222325L;
+        for ( int i = start; i < end; i++ ) {
+            char ch = text.charAt(i);
+            hash = (hash ^ (ch & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (ch >>> 8)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * a sentence of the document
+     */
+    private static class SentenceEntry {
+        int start;
+        int end;
+        long hash;
+        VScore score;
+    }
+
+}
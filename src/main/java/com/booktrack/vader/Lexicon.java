@@ -0,0 +1,79 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * the word (and phrase) valences Vader scores with
+ *
+ * terms are lower-case, the words of a phrase are separated by a single space.
+ *
+ */
+public interface Lexicon {
+
+    /**
+     * look up a single word
+     * @param word the lower-case word
+     * @return its valence, or NaN if the word isn't in the lexicon
+     */
+    double getValence( String word );
+
+    /**
+     * @param word the lower-case word
+     * @return true if the word is in the lexicon
+     */
+    default boolean contains( String word ) {
+        return !Double.isNaN(getValence(word));
+    }
+
+    /**
+     * @return the number of terms in the lexicon
+     */
+    long size();
+
+    /**
+     * @return the number of words in the longest phrase matched by matchPhrase(), 1 if phrases aren't matched
+     */
+    int getMaxPhraseLength();
+
+    /**
+     * find the longest phrase of two or more words starting at a word of a sentence
+     * @param sentence the sentence (without punctuation)
+     * @param start the index of the first word
+     * @param valence receives the valence of the phrase in [0]
+     * @return the number of words in the phrase, or 0 if no phrase starts there
+     */
+    int matchPhrase( List<Token> sentence, int start, double[] valence );
+
+    /**
+     * visit every term of the lexicon
+     * @param consumer receives each term
+     */
+    void forEachTerm( Consumer<String> consumer );
+
+}
@@ -0,0 +1,146 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.util.*;
+
+/**
+ * the words and idioms whose valence differs between two lexicons
+ *
+ * a sentence's score can only change with the lexicon if it contains a changed word
+ * (its valence, or whether it counts as a sentiment word for its neighbours) or all the
+ * words of a changed idiom, so together with a TermIndex this finds every sentence
+ * that needs to be scored again.
+ *
+ */
+public class LexiconDiff {
+
+    private final Set<String> changedWords = new TreeSet<>();
+    private final Set<String> changedIdioms = new TreeSet<>();
+
+    private LexiconDiff() {
+    }
+
+    /**
+     * compare the lexicons of two initialised vaders
+     * @param before the vader with the old lexicon
+     * @param after the vader with the new lexicon
+     * @return the difference
+     */
+    public static LexiconDiff between( Vader before, Vader after ) {
+        LexiconDiff diff = new LexiconDiff();
+        addChanged(before.getLexicon(), after.getLexicon(), diff.changedWords);
+        addChanged(before.getIdiomMap(), after.getIdiomMap(), diff.changedIdioms);
+        return diff;
+    }
+
+    /**
+     * add all terms that were added, removed or whose valence differs
+     */
+    private static void addChanged( Lexicon before, Lexicon after, Set<String> changedSet ) {
+        before.forEachTerm(term -> {
+            if ( Double.compare(before.getValence(term), after.getValence(term)) != 0 ) {
+                changedSet.add(term);
+            }
+        });
+        after.forEachTerm(term -> {
+            if ( !before.contains(term) ) {
+                changedSet.add(term);
+            }
+        });
+    }
+
+    /**
+     * add all keys that were added, removed or whose value differs
+     */
+    private static void addChanged( Map<String, Double> before, Map<String, Double> after, Set<String> changedSet ) {
+        for ( Map.Entry<String, Double> entry : before.entrySet() ) {
+            if ( !entry.getValue().equals(after.get(entry.getKey())) ) {
+                changedSet.add(entry.getKey());
+            }
+        }
+        for ( String key : after.keySet() ) {
+            if ( !before.containsKey(key) ) {
+                changedSet.add(key);
+            }
+        }
+    }
+
+    /**
+     * find the sentences whose score may have changed
+     * @param index the index of the scored sentences
+     * @return the sorted ids of the sentences to score again
+     */
+    public long[] getAffectedSentenceIds( TermIndex index ) {
+        TreeSet<Long> idSet = new TreeSet<>();
+        List<String> phraseList = new ArrayList<>(changedIdioms);
+        for ( String word : changedWords ) {
+            if ( word.indexOf(' ') > 0 ) {
+                phraseList.add(word); // a phrase of the lexicon, needs all its words like an idiom
+                continue;
+            }
+            for ( long id : index.getSentenceIds(word.toLowerCase()) ) {
+                idSet.add(id);
+            }
+        }
+        for ( String idiom : phraseList ) {
+            List<String> wordList = new ArrayList<>();
+            boolean canMatch = true;
+            for ( String word : idiom.split(" ") ) {
+                // single character tokens (other than emoji) are filtered out before idioms are matched
+                if ( word.length() < 2 && !EmojiTable.isEmoji(word) ) {
+                    canMatch = false;
+                    break;
+                }
+                wordList.add(word.toLowerCase());
+            }
+            if ( canMatch && !wordList.isEmpty() ) {
+                for ( long id : index.getSentenceIdsWithAll(wordList) ) {
+                    idSet.add(id);
+                }
+            }
+        }
+        long[] idArray = new long[idSet.size()];
+        int i = 0;
+        for ( long id : idSet ) {
+            idArray[i++] = id;
+        }
+        return idArray;
+    }
+
+    public boolean isEmpty() {
+        return changedWords.isEmpty() && changedIdioms.isEmpty();
+    }
+
+    public Set<String> getChangedWords() {
+        return Collections.unmodifiableSet(changedWords);
+    }
+
+    public Set<String> getChangedIdioms() {
+        return Collections.unmodifiableSet(changedIdioms);
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import opennlp.tools.util.StringUtil;
+
+import java.util.*;
+
+/**
+ * an Aho-Corasick automaton over the surface forms of the lexicon, used to find out
+ * in a single pass over raw text whether it could contain any sentiment word at all
+ *
+ * Vader only gives a word a non-zero sentiment if the lower-cased token is a key of the
+ * lexicon, and every token the OpenNLP tokenizer produces is a substring of its sentence.
+ * so if no lexicon key occurs anywhere in the lower-cased text, every token scores 0.0 and
+ * the sentence is neutral (or empty, see neutralScore) - no need to tag or score it.  the matcher folds A..Z
+ * itself and gives up (answers "maybe") on any other character that lower-casing would
+ * change, so it can only ever report too many hits, never too few.
+ *
+ * a key that starts (or ends) with an ascii letter or digit only counts where the text has
+ * no ascii letter or digit just before (or after) it - otherwise short keys like "no", "ok"
+ * or "ha" would be found in nearly every sentence.  the tokenizer only ever splits a run of
+ * letters and digits in front of "n't" (do|n't, ca|n't), which is allowed for.
+ *
+ */
+public class LexiconFilter {
+
+    // per state: its children as a sorted label / target slice of labels[] and targets[]
+    private final int[] childStart;
+    private final int[] childCount;
+    private final char[] labels;
+    private final int[] targets;
+
+    // per state: the failure link, the length of the key ending here (0 if none), and the
+    // nearest state on the failure chain where a key ends (0 if none)
+    private final int[] fail;
+    private final int[] keyLength;
+    private final int[] keyLink;
+
+    // per state with a key: whether its first / last character is an ascii letter or digit
+    private final boolean[] startsWord;
+    private final boolean[] endsWord;
+
+    /**
+     * build the automaton
+     * @param keys the surface forms to look for
+     */
+    public LexiconFilter( Collection<String> keys ) {
+
+        // build the trie
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        Map<Integer, String> keyMap = new HashMap<>(); // the key ending at a state
+        trie.add(new TreeMap<>());
+        for ( String key : keys ) {
+            if ( key == null || key.isEmpty() ) {
+                continue;
+            }
+            int state = 0;
+            for ( int i = 0; i < key.length(); i++ ) {
+                char ch = fold(key.charAt(i));
+                Integer child = trie.get(state).get(ch);
+                if ( child == null ) {
+                    child = trie.size();
+                    trie.add(new TreeMap<>());
+                    trie.get(state).put(ch, child);
+                }
+                state = child;
+            }
+            keyMap.put(state, key);
+        }
+
+        // flatten it into arrays
+        int stateCount = trie.size();
+        childStart = new int[stateCount];
+        childCount = new int[stateCount];
+        labels = new char[stateCount - 1];
+        targets = new int[stateCount - 1];
+        fail = new int[stateCount];
+        keyLength = new int[stateCount];
+        keyLink = new int[stateCount];
+        startsWord = new boolean[stateCount];
+        endsWord = new boolean[stateCount];
+        int offset = 0;
+        for ( int state = 0; state < stateCount; state++ ) {
+            childStart[state] = offset;
+            childCount[state] = trie.get(state).size();
+            for ( Map.Entry<Character, Integer> entry : trie.get(state).entrySet() ) {
+                labels[offset] = entry.getKey();
+                targets[offset] = entry.getValue();
+                offset++;
+            }
+            String key = keyMap.get(state);
+            if ( key != null ) {
+                keyLength[state] = key.length();
+                startsWord[state] = isWordChar(key.charAt(0));
+                endsWord[state] = isWordChar(key.charAt(key.length() - 1));
+            }
+        }
+
+        // breadth first setup of the failure links
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for ( int i = 0; i < childCount[0]; i++ ) {
+            int child = targets[childStart[0] + i];
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while ( !queue.isEmpty() ) {
+            int state = queue.poll();
+            for ( int i = 0; i < childCount[state]; i++ ) {
+                char ch = labels[childStart[state] + i];
+                int child = targets[childStart[state] + i];
+                int f = fail[state];
+                int next = transition(f, ch);
+                while ( next < 0 && f != 0 ) {
+                    f = fail[f];
+                    next = transition(f, ch);
+                }
+                fail[child] = next < 0 ? 0 : next;
+                keyLink[child] = keyLength[fail[child]] > 0 ? fail[child] : keyLink[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * check if any key of the lexicon could be a token (or part of a token) of text
+     * @param text the raw text to check
+     * @return false only if no token of this text can be found in the lexicon
+     */
+    public boolean mayContain( String text ) {
+        if ( text == null ) {
+            return false;
+        }
+        int state = 0;
+        int length = text.length();
+        for ( int i = 0; i < length; i++ ) {
+            char ch = text.charAt(i);
+            if ( ch >= 128 ) {
+                // outside ascii, only characters that lower-casing leaves alone can be matched as-is
+                int codePoint = ch;
+                if ( Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1)) ) {
+                    codePoint = Character.toCodePoint(ch, text.charAt(i + 1));
+                }
+                if ( Character.toLowerCase(codePoint) != codePoint ) {
+                    return true;
+                }
+            } else {
+                ch = fold(ch);
+            }
+            int next = transition(state, ch);
+            while ( next < 0 && state != 0 ) {
+                state = fail[state];
+                next = transition(state, ch);
+            }
+            state = next < 0 ? 0 : next;
+            for ( int key = keyLength[state] > 0 ? state : keyLink[state]; key != 0; key = keyLink[key] ) {
+                if ( isTokenAt(text, i + 1 - keyLength[key], i + 1, key) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * check a key found in text could be a whole token there
+     * @param text the text
+     * @param start the start of the key in text
+     * @param end the end of the key in text
+     * @param key the state the key ends at
+     * @return false if the key is part of a longer run of letters and digits
+     */
+    private boolean isTokenAt( String text, int start, int end, int key ) {
+        if ( startsWord[key] && start > 0 && isWordChar(text.charAt(start - 1)) ) {
+            return false;
+        }
+        if ( endsWord[key] && end < text.length() && isWordChar(text.charAt(end)) ) {
+            return text.regionMatches(true, end, "n't", 0, 3) || text.regionMatches(true, end, "n\u2019t", 0, 3);
+        }
+        return true;
+    }
+
+    /**
+     * the score Vader gives a sentence without any sentiment words, if that can be told without
+     * tokenizing it - neutral if it has a token Vader counts as a word (longer than one character),
+     * otherwise all zeros.  the tokenizer never splits a whitespace separated run of two or more
+     * ascii letters and digits (the alpha-numeric optimization of the en-token model), so such a
+     * run is a word.  a token can't contain whitespace, so ascii text without two adjacent
+     * non-whitespace characters has no word.  anything in between, e.g. "1." or "!!" that tokenize
+     * into single characters, or one character emoji, needs the tokenizer to tell
+     * @param text the raw text of the sentence
+     * @return the score of the sentence, or null if it has to be parsed to tell
+     */
+    public static VScore neutralScore( String text ) {
+        if ( text == null ) {
+            return new VScore(0.0, 0.0, 0.0, 0.0);
+        }
+        boolean unsure = false;
+        int runLength = 0; // of the current run of non-whitespace characters
+        boolean runIsAlphaNumeric = true;
+        for ( int i = 0; i <= text.length(); i++ ) {
+            char ch = i < text.length() ? text.charAt(i) : ' ';
+            if ( StringUtil.isWhitespace(ch) ) {
+                if ( runLength > 1 ) {
+                    if ( runIsAlphaNumeric ) {
+                        return new VScore(0.0, 1.0, 0.0, 0.0);
+                    }
+                    unsure = true;
+                }
+                runLength = 0;
+                runIsAlphaNumeric = true;
+            } else {
+                runLength++;
+                runIsAlphaNumeric = runIsAlphaNumeric && isWordChar(ch);
+                if ( ch >= 128 ) {
+                    unsure = true;
+                }
+            }
+        }
+        return unsure ? null : new VScore(0.0, 0.0, 0.0, 0.0);
+    }
+
+    /**
+     * @return the number of states in the automaton
+     */
+    public int size() {
+        return fail.length;
+    }
+
+    /**
+     * follow the trie edge for ch out of state
+     * @param state the state to move from
+     * @param ch the character
+     * @return the next state or -1 if there is no such edge
+     */
+    private int transition( int state, char ch ) {
+        int low = childStart[state];
+        int high = low + childCount[state] - 1;
+        while ( low <= high ) {
+            int mid = (low + high) >>> 1;
+            char label = labels[mid];
+            if ( label < ch ) {
+                low = mid + 1;
+            } else if ( label > ch ) {
+                high = mid - 1;
+            } else {
+                return targets[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true for an ascii letter or digit
+     */
+    private static boolean isWordChar( char ch ) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9');
+    }
+
+    /**
+     * lower-case A..Z, leave everything else alone
+     */
+    private static char fold( char ch ) {
+        if ( ch >= 'A' && ch <= 'Z' ) {
+            return (char)(ch + ('a' - 'A'));
+        }
+        return ch;
+    }
+
+}
@@ -26,13 +26,17 @@
 
 package com.booktrack.vader;
 
+import opennlp.tools.util.Span;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -57,6 +61,20 @@ public class Main {
         // create Options object for command line parsing
         Options options = new Options();
         options.addOption("file", true, "input text-file (-file) to read and analyse using Vader");
+        options.addOption("threads", true, "use the staged pipeline with this many threads (-threads) for the tokenize, tag and score stages");
+        options.addOption("notag", false, "don't load the pos tagger (-notag), Vader's scoring doesn't use the tags");
+        options.addOption("workers", true, "shard the -file(s) (a directory or comma separated list) across this many worker processes (-workers)");
+        options.addOption("port", true, "the local port (-port) the coordinator listens on for workers, default any free port");
+        options.addOption("shardsize", true, "the size in bytes (-shardsize) of the shards the coordinator hands out, default 1MB");
+        options.addOption("out", true, "write the coordinator's scored sentences to this file (-out) as tab separated values");
+        options.addOption("budget", true, "score the -file within this many milliseconds (-budget), sampling it if it is too large");
+        options.addOption("explain", false, "log the rules that changed each word's score (-explain)");
+        options.addOption("cache", true, "keep the parse of the -file in this parse cache directory (-cache), to skip OpenNLP when it is scored again");
+        options.addOption("cachesize", true, "the most megabytes (-cachesize) of parses the -cache keeps, default 1024");
+        options.addOption("store", true, "write the sentence scores to this ScoreStore file (-store) for querying later");
+        options.addOption("index", true, "write a TermIndex of the sentences, by sentence number, to this file (-index) to rescore only those a lexicon change affects");
+        options.addOption("worker", false, "run as a worker process (-worker) of the coordinator at -connect");
+        options.addOption("connect", true, "the host:port (-connect) of the coordinator a worker connects to");
 
         CommandLineParser cmdParser = new DefaultParser();
         CommandLine line = null;
@@ -69,12 +87,33 @@ public class Main {
             System.exit(0);
         }
 
+        if ( line.hasOption("worker") ) {
+            runWorker(line);
+            return;
+        }
+
         // get the command line argument -file
         String inputFile = line.getOptionValue("file");
         if (inputFile == null ) {
             help(options);
             System.exit(0);
         }
+
+        // the other modes don't score sentence by sentence here - only -threads can still write a -store or -index
+        String mode = line.hasOption("workers") ? "workers" : line.hasOption("budget") ? "budget" : line.hasOption("threads") ? "threads" : null;
+        if ( mode != null ) {
+            for ( String option : new String[] {"store", "index", "explain", "cache"} ) {
+                boolean threadsCanWrite = option.equals("store") || option.equals("index");
+                if ( line.hasOption(option) && !(threadsCanWrite && mode.equals("threads")) ) {
+                    logger.error("-" + option + " can't be used with -" + mode);
+                    System.exit(0);
+                }
+            }
+        }
+        if ( line.hasOption("workers") ) {
+            runCoordinator(line, inputFile);
+            return;
+        }
         if ( !new File(inputFile).exists() ) {
             logger.error("file does not exist: " +inputFile);
             System.exit(0);
@@ -90,18 +129,208 @@ public class Main {
 
         // setup nlp processor
         VaderNLP vaderNLP = new VaderNLP();
-        vaderNLP.init(); // load open-nlp
+        vaderNLP.init(!line.hasOption("notag")); // load open-nlp
 
-        // parse the text into a set of sentences
-        List<List<Token>> sentenceList = vaderNLP.parse(fileText);
+        if ( line.hasOption("budget") ) {
+            DeadlineScorer deadlineScorer = new DeadlineScorer(vader, vaderNLP);
+            DeadlineScorer.Result result = deadlineScorer.score(fileText, Long.parseLong(line.getOptionValue("budget")));
+            logger.info("Vader average:" + result.toString());
+            return;
+        }
 
-        // apply vader analysis to each sentence
-        for ( List<Token> sentence : sentenceList ) {
-            VScore vaderScore = vader.analyseSentence(sentence);
-            logger.info("sentence:" + Token.tokenListToString(sentence) );
+        if ( line.hasOption("threads") ) {
+            ScoreStoreWriter storeWriter = line.hasOption("store") ? new ScoreStoreWriter() : null;
+            TermIndexWriter indexWriter = line.hasOption("index") ? new TermIndexWriter() : null;
+            runPipeline(vader, vaderNLP, inputFile, fileText, Integer.parseInt(line.getOptionValue("threads")), storeWriter, indexWriter);
+            if ( storeWriter != null ) {
+                storeWriter.write(new File(line.getOptionValue("store")));
+            }
+            if ( indexWriter != null ) {
+                indexWriter.write(new File(line.getOptionValue("index")));
+            }
+            return;
+        }
+
+        // split the text into a set of sentences - all parsed up front if the parse is cached
+        Span[] sentenceSpanList;
+        List<List<Token>> parsedList = null;
+        if ( line.hasOption("cache") ) {
+            long cacheSize = Long.parseLong(line.getOptionValue("cachesize", "1024")) * 1024L * 1024L;
+            ParseCache parseCache = new ParseCache(new File(line.getOptionValue("cache")), cacheSize);
+            List<Span> spanList = new ArrayList<>();
+            parsedList = parseCache.parse(fileText, vaderNLP, spanList);
+            sentenceSpanList = spanList.toArray(new Span[0]);
+            logger.debug("parse cache " + (parseCache.getHitCount() > 0 ? "hit" : "miss") + ", " +
+                    parseCache.getEntryCount() + " entries of " + parseCache.getSize() + " bytes");
+        } else {
+            sentenceSpanList = vaderNLP.getSentenceSpans(fileText);
+        }
+        ScoreStoreWriter storeWriter = line.hasOption("store") ? new ScoreStoreWriter() : null;
+        TermIndexWriter indexWriter = line.hasOption("index") ? new TermIndexWriter() : null;
+        ExplainTrace trace = line.hasOption("explain") ? new ExplainTrace() : null;
+
+        // apply vader analysis to each sentence (sentences without any sentiment words aren't parsed)
+        for ( int i = 0; i < sentenceSpanList.length; i++ ) {
+            Span span = sentenceSpanList[i];
+            String sentence = span.getCoveredText(fileText).toString();
+            List<Token> tokenList = parsedList != null ? parsedList.get(i) : null;
+            VScore vaderScore = null;
+            if ( tokenList == null && trace == null ) {
+                vaderScore = vader.prescreen(sentence);
+            }
+            if ( vaderScore == null ) {
+                if ( tokenList == null ) {
+                    tokenList = vaderNLP.parseSentence(sentence);
+                }
+                vaderScore = vader.analyseSentence(tokenList, trace);
+            }
+            if ( logger.isInfoEnabled() ) {
+                if ( tokenList == null ) {
+                    // not parsed, show the tokens a parse would have
+                    tokenList = vaderNLP.toSentence(vaderNLP.getTokens(sentence), null);
+                }
+                logger.info("sentence:" + Token.tokenListToString(tokenList) );
+            }
             logger.info("Vader score:" + vaderScore.toString());
+            if ( trace != null && trace.size() > 0 ) {
+                logger.info("explain:\n" + trace.toString());
+            }
+            if ( storeWriter != null ) {
+                storeWriter.add(inputFile, span.getStart(), span.getEnd(), vaderScore);
+            }
+            if ( indexWriter != null ) {
+                indexWriter.add(i, sentence, tokenList, vaderScore, vaderNLP);
+            }
         }
 
+        if ( storeWriter != null ) {
+            storeWriter.write(new File(line.getOptionValue("store")));
+        }
+        if ( indexWriter != null ) {
+            indexWriter.write(new File(line.getOptionValue("index")));
+        }
+
+    }
+
+    /**
+     * the same analysis as main, but with the parse and score steps overlapped in a VaderPipeline
+     * @param vader the initialised vader
+     * @param vaderNLP the initialised nlp parser
+     * @param documentId the id of the text
+     * @param fileText the text to analyse
+     * @param threads the number of threads for the tokenize, tag and score stages
+     * @param storeWriter the store to add the sentence scores to, or null
+     * @param indexWriter the term index to add the sentences to, or null
+     * @throws Exception anything goes wrong - except
+     */
+    private static void runPipeline( Vader vader, VaderNLP vaderNLP, String documentId, String fileText, int threads,
+                                     ScoreStoreWriter storeWriter, TermIndexWriter indexWriter ) throws Exception {
+        final VaderNLP sinkNLP = vaderNLP.copy(); // tokenizes the sentences the pipeline didn't parse, for the index
+        VaderPipeline pipeline = new VaderPipeline(vader, vaderNLP, scoredSentence -> {
+            logger.info("sentence:" + scoredSentence.getText() );
+            if ( scoredSentence.getError() != null ) {
+                logger.error("sentence " + scoredSentence.getSentenceIndex() + " failed: " + scoredSentence.getError().getMessage());
+            } else {
+                logger.info("Vader score:" + scoredSentence.getScore().toString());
+                if ( storeWriter != null ) {
+                    storeWriter.add(documentId, scoredSentence.getStart(), scoredSentence.getEnd(), scoredSentence.getScore());
+                }
+                if ( indexWriter != null ) {
+                    try {
+                        indexWriter.add(scoredSentence.getSentenceIndex(), scoredSentence.getText(),
+                                scoredSentence.getSentence(), scoredSentence.getScore(), sinkNLP);
+                    } catch ( IOException ex ) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            }
+        });
+        pipeline.setTokenizeThreads(threads);
+        pipeline.setTagThreads(threads);
+        pipeline.setScoreThreads(threads);
+        pipeline.start();
+        pipeline.submit(documentId, fileText);
+        logger.debug("pipeline queue depths: " + pipeline.getQueueDepths());
+        pipeline.close();
+    }
+
+    /**
+     * score the input files across worker processes with a ShardCoordinator
+     * @param line the command line
+     * @param inputFile the -file value: a file, a directory or a comma separated list of either
+     * @throws Exception anything goes wrong - except
+     */
+    private static void runCoordinator( CommandLine line, String inputFile ) throws Exception {
+        List<File> fileList = new ArrayList<>();
+        for ( String name : inputFile.split(",") ) {
+            File file = new File(name.trim());
+            if ( file.isDirectory() ) {
+                File[] children = file.listFiles(File::isFile);
+                if ( children != null ) {
+                    Arrays.sort(children);
+                    fileList.addAll(Arrays.asList(children));
+                }
+            } else if ( file.exists() ) {
+                fileList.add(file);
+            } else {
+                logger.error("file does not exist: " + file);
+                System.exit(0);
+            }
+        }
+
+        PrintWriter writer = null;
+        if ( line.hasOption("out") ) {
+            writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(line.getOptionValue("out")), StandardCharsets.UTF_8)));
+        }
+        final PrintWriter out = writer;
+        ShardCoordinator coordinator = new ShardCoordinator(scoredSentence -> {
+            VScore score = scoredSentence.getScore();
+            if ( out != null ) {
+                out.println(scoredSentence.getDocumentId() + "\t" + scoredSentence.getSentenceIndex() + "\t" +
+                        score.getPositive() + "\t" + score.getNeutral() + "\t" + score.getNegative() + "\t" +
+                        score.getCompound() + "\t" + scoredSentence.getText().replaceAll("\\s+", " "));
+            } else {
+                logger.info("sentence:" + scoredSentence.getText() );
+                logger.info("Vader score:" + score.toString());
+            }
+        });
+        coordinator.setWorkers(Integer.parseInt(line.getOptionValue("workers")));
+        if ( line.hasOption("port") ) {
+            coordinator.setPort(Integer.parseInt(line.getOptionValue("port")));
+        }
+        if ( line.hasOption("shardsize") ) {
+            coordinator.setShardSize(Integer.parseInt(line.getOptionValue("shardsize")));
+        }
+        if ( line.hasOption("notag") ) {
+            coordinator.setWorkerArgs(Arrays.asList("-notag"));
+        }
+        try {
+            coordinator.run(fileList);
+        } finally {
+            if ( out != null ) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * run as a worker process of a coordinator, until the coordinator is done
+     * @param line the command line
+     * @throws Exception anything goes wrong - except
+     */
+    private static void runWorker( CommandLine line ) throws Exception {
+        String connect = line.getOptionValue("connect");
+        int colon = connect != null ? connect.lastIndexOf(':') : -1;
+        if ( colon <= 0 ) {
+            logger.error("-worker needs -connect host:port");
+            System.exit(0);
+        }
+        Vader vader = new Vader();
+        vader.init();
+        VaderNLP vaderNLP = new VaderNLP();
+        vaderNLP.init(!line.hasOption("notag"));
+        new ShardWorker(vader, vaderNLP).run(connect.substring(0, colon), Integer.parseInt(connect.substring(colon + 1)));
     }
 
     /**
@@ -109,7 +338,9 @@ public class Main {
      * @param options the options file of the command line system
      */
     private static void help(Options options){
-        logger.error(options.getOption("file").getDescription());
+        for ( Option option : options.getOptions() ) {
+            logger.error(option.getDescription());
+        }
     }
 
 }
@@ -0,0 +1,92 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * the on-heap lexicon vader loads by default, a hash map of word to valence
+ *
+ * multi-word entries (like "fed up") are kept, but as before never match a single token,
+ * so this lexicon doesn't match phrases.
+ *
+ */
+public class MapLexicon implements Lexicon {
+
+    private final Map<String, Double> valenceMap;
+
+    public MapLexicon() {
+        this.valenceMap = new HashMap<>();
+    }
+
+    public MapLexicon( Map<String, Double> valenceMap ) {
+        this.valenceMap = valenceMap;
+    }
+
+    /**
+     * add or replace a term
+     * @param term the term
+     * @param valence its valence
+     */
+    public void put( String term, double valence ) {
+        valenceMap.put(term, valence);
+    }
+
+    @Override
+    public double getValence( String word ) {
+        Double valence = valenceMap.get(word);
+        return valence != null ? valence : Double.NaN;
+    }
+
+    @Override
+    public boolean contains( String word ) {
+        return valenceMap.containsKey(word);
+    }
+
+    @Override
+    public long size() {
+        return valenceMap.size();
+    }
+
+    @Override
+    public int getMaxPhraseLength() {
+        return 1;
+    }
+
+    @Override
+    public int matchPhrase( List<Token> sentence, int start, double[] valence ) {
+        return 0;
+    }
+
+    @Override
+    public void forEachTerm( Consumer<String> consumer ) {
+        valenceMap.keySet().forEach(consumer);
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.util.AbstractList;
+
+/**
+ * scores a sentence as its tokens arrive (e.g. a chat message as it is typed), in constant
+ * time and memory per token - getScore() is at any point exactly (bit for bit) the score
+ * Vader.analyseSentence() gives the tokens appended so far
+ *
+ * the word rules look back 4 words ("at least" before a negated booster), and forward up to
+ * Vader.getLookAhead() words (idioms, phrases, "kind of"), so a word's score can't change once
+ * that many words have arrived - except through the sentence-wide rules: the ALLCAPS
+ * differential, and the "but" re-weighting.
+ * the differential turns true (for good) once the sentence has a word in ALLCAPS and one not,
+ * and a "but" to come halves every word before it.  so each word is scored, as it becomes final,
+ * under each case that may still happen, and added to running sums for each in word order.
+ * getScore() only scores the last few words, which may still change, on top of those sums.
+ * the words are kept in a ring buffer just long enough for the rules to look back over.
+ *
+ * a scorer isn't thread-safe; reset() it to score the next sentence.
+ *
+ */
+public class OnlineScorer {
+
+    private final Vader vader;
+    private final int lookAhead;
+    private final TokenWindow window;
+    private final double[] phraseValence;
+
+    // counts over all the tokens, punctuation included
+    private int tokenCount = 0;
+    private int butIndex = -1; // the index of the first "but"
+    private int epCount = 0;
+    private int qmCount = 0;
+    private int caseWordCount = 0; // the tokens other than emoticons / emoji
+    private int capsCount = 0; // ... and those of them in ALLCAPS
+
+    // the words that can't change any more, and the end of the phrase matched by them
+    private int finalCount = 0;
+    private int finalPhraseEnd = 0;
+    private final int[] phraseEnd = new int[1];
+
+    // the running sums of the final words' scores, by [caps differential false / true] and
+    // [as weighted now / halved for a "but" still to come - the same once there is a "but"]
+    private final Sums[][] sumsArray = new Sums[2][2];
+    private final Sums current = new Sums();
+
+    /**
+     * @param vader an initialised vader - its lexicon must not change while scoring
+     */
+    public OnlineScorer( Vader vader ) {
+        this.vader = vader;
+        this.lookAhead = vader.getLookAhead();
+        this.window = new TokenWindow(lookAhead + 4);
+        this.phraseValence = vader.getLexicon().getMaxPhraseLength() > 1 ? new double[1] : null;
+        for ( Sums[] sums : sumsArray ) {
+            sums[0] = new Sums();
+            sums[1] = new Sums();
+        }
+    }
+
+    /**
+     * add the next token of the sentence
+     * @param token the token, as VaderNLP would produce it (punctuation included)
+     */
+    public void append( Token token ) {
+        String value = token.getValue();
+        if ( !token.isEmoji() ) {
+            caseWordCount++;
+            if ( Vader.isUpper(value) ) {
+                capsCount++;
+            }
+        }
+        if ( butIndex < 0 && (value.equals("but") || value.equals("BUT")) ) {
+            // every word so far is before it: the halved sums are the sums from now on
+            butIndex = tokenCount;
+            for ( Sums[] sums : sumsArray ) {
+                sums[0].set(sums[1]);
+            }
+        }
+        if ( value.equals("!") ) {
+            epCount++;
+        } else if ( value.equals("?") ) {
+            qmCount++;
+        }
+        tokenCount++;
+
+        if ( value.length() > 1 || token.isEmoji() ) {
+            window.add(token);
+            if ( window.size() - finalCount >= lookAhead ) {
+                addFinalWord();
+            }
+        }
+    }
+
+    /**
+     * @return the score of the sentence so far
+     */
+    public VScore getScore() {
+        boolean isCapsDifferential = isCapsDifferential();
+        current.set(sumsArray[isCapsDifferential ? 1 : 0][0]);
+        phraseEnd[0] = finalPhraseEnd;
+        for ( int i = finalCount; i < window.size(); i++ ) {
+            double v = vader.scoreWord(window, i, isCapsDifferential, phraseEnd, phraseValence, null, null);
+            current.add(butIndex >= 0 ? SentenceAggregator.butWeighted(v, i, butIndex) : v);
+        }
+        double[] score = new double[4];
+        SentenceAggregator.score(current.sum, current.posSum, current.negSum, current.neutralCount,
+                epCount, qmCount, score, null);
+        return new VScore(score[0], score[1], score[2], score[3]);
+    }
+
+    /**
+     * forget the sentence, to score another
+     */
+    public void reset() {
+        tokenCount = 0;
+        butIndex = -1;
+        epCount = 0;
+        qmCount = 0;
+        caseWordCount = 0;
+        capsCount = 0;
+        finalCount = 0;
+        finalPhraseEnd = 0;
+        window.clear();
+        for ( Sums[] sums : sumsArray ) {
+            sums[0].clear();
+            sums[1].clear();
+        }
+    }
+
+    /**
+     * @return the number of tokens appended, punctuation included
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * add the oldest word not yet final, which now is, to the sums
+     */
+    private void addFinalWord() {
+        int i = finalCount;
+        // once true the differential stays true, until then the word is scored both ways
+        for ( int caps = isCapsDifferential() ? 1 : 0; caps < 2; caps++ ) {
+            phraseEnd[0] = finalPhraseEnd;
+            double v = vader.scoreWord(window, i, caps == 1, phraseEnd, phraseValence, null, null);
+            if ( butIndex >= 0 ) {
+                sumsArray[caps][0].add(SentenceAggregator.butWeighted(v, i, butIndex));
+            } else {
+                sumsArray[caps][0].add(v);
+                sumsArray[caps][1].add(v * 0.5);
+            }
+        }
+        finalPhraseEnd = phraseEnd[0];
+        finalCount++;
+    }
+
+    // as Vader.isAllCAPDifferential
+    private boolean isCapsDifferential() {
+        int capsDifferential = caseWordCount - capsCount;
+        return capsDifferential > 0 && capsDifferential < caseWordCount;
+    }
+
+    /**
+     * the sums of SentenceAggregator.aggregate(), added to in word order as it does
+     */
+    private static class Sums {
+        double sum;
+        double posSum;
+        double negSum;
+        double neutralCount;
+
+        void add( double sentimentScore ) {
+            sum = sum + sentimentScore;
+            if ( sentimentScore > 0.0 ) {
+                posSum = posSum + sentimentScore + 1.0;
+            }
+            if ( sentimentScore < 0.0 ) {
+                negSum = negSum + sentimentScore - 1.0;
+            }
+            if ( sentimentScore == 0.0 ) {
+                neutralCount = neutralCount + 1;
+            }
+        }
+
+        void set( Sums other ) {
+            sum = other.sum;
+            posSum = other.posSum;
+            negSum = other.negSum;
+            neutralCount = other.neutralCount;
+        }
+
+        void clear() {
+            sum = 0.0;
+            posSum = 0.0;
+            negSum = 0.0;
+            neutralCount = 0.0;
+        }
+    }
+
+    /**
+     * the words of the sentence (punctuation filtered out) as a list indexed from the start of
+     * the sentence, that only keeps the last few words
+     */
+    private static class TokenWindow extends AbstractList<Token> {
+        private final Token[] tokenArray;
+        private final int mask;
+        private int size = 0;
+
+        TokenWindow( int minCapacity ) {
+            int capacity = 8;
+            while ( capacity < minCapacity ) {
+                capacity <<= 1;
+            }
+            tokenArray = new Token[capacity];
+            mask = capacity - 1;
+        }
+
+        @Override
+        public Token get( int index ) {
+            if ( index < 0 || index >= size || index < size - tokenArray.length ) {
+                throw new IndexOutOfBoundsException("word " + index + " of " + size + " is not in the window");
+            }
+            return tokenArray[index & mask];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean add( Token token ) {
+            tokenArray[size & mask] = token;
+            size++;
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * a small set of changes (a tenant's own valences) layered over a shared, read-only base lexicon
+ *
+ * the changes are kept in a compact open-addressing table, so an overlay costs only the memory
+ * of its own terms however large the base is.  a word the overlay doesn't change - nearly every
+ * word - is ruled out by a bit set of term hashes (String caches its hash) before the table is
+ * probed, so the common lookup is a single probe of the base.  the overlay scores exactly as a
+ * copy of the base with the changes applied would, phrases included (if the base matches them).
+ *
+ * the overlay is immutable: build a new one to change a tenant's valences.
+ *
+ */
+public class OverlayLexicon implements Lexicon {
+
+    private final Lexicon base;
+
+    // open-addressing table of the changed terms, a NaN valence removes the term from the base
+    private final String[] termArray;
+    private final double[] valenceArray;
+    private final int mask;
+
+    // bit set of term hashes, a clear bit means the word isn't in the table
+    private final long[] hashBits;
+    private final int hashMask;
+
+    private final long size;
+    private final int overlayPhraseLength; // the words in the longest added phrase
+    private final boolean changesPhrases; // true if any phrase is added, changed or removed
+
+    /**
+     * layer changes over a base lexicon
+     * @param base the shared base lexicon
+     * @param valenceMap the changed terms (lower-case) and their valences - NaN removes a term of the base
+     */
+    public OverlayLexicon( Lexicon base, Map<String, Double> valenceMap ) {
+        this.base = base;
+
+        int capacity = 4;
+        while ( capacity < valenceMap.size() * 2 ) {
+            capacity <<= 1;
+        }
+        termArray = new String[capacity];
+        valenceArray = new double[capacity];
+        mask = capacity - 1;
+        hashBits = new long[Math.max(1, capacity / 8)]; // 8 bits per slot
+        hashMask = hashBits.length * 64 - 1;
+
+        long size = base.size();
+        int phraseLength = 1;
+        boolean phrases = false;
+        for ( Map.Entry<String, Double> entry : valenceMap.entrySet() ) {
+            String term = entry.getKey();
+            double valence = entry.getValue();
+            int slot = spread(term.hashCode()) & mask;
+            while ( termArray[slot] != null ) {
+                slot = (slot + 1) & mask;
+            }
+            termArray[slot] = term;
+            valenceArray[slot] = valence;
+            int bit = spread(term.hashCode()) & hashMask;
+            hashBits[bit >>> 6] |= 1L << bit;
+
+            phrases |= term.indexOf(' ') >= 0;
+            boolean inBase = base.contains(term);
+            if ( Double.isNaN(valence) ) {
+                size -= inBase ? 1 : 0;
+            } else {
+                size += inBase ? 0 : 1;
+                phraseLength = Math.max(phraseLength, wordCount(term));
+            }
+        }
+        this.size = size;
+        this.overlayPhraseLength = phraseLength;
+        this.changesPhrases = phrases;
+    }
+
+    @Override
+    public double getValence( String word ) {
+        int hash = spread(word.hashCode());
+        int bit = hash & hashMask;
+        if ( (hashBits[bit >>> 6] & (1L << bit)) != 0 ) {
+            int slot = hash & mask;
+            String term;
+            while ( (term = termArray[slot]) != null ) {
+                if ( term.equals(word) ) {
+                    return valenceArray[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return base.getValence(word);
+    }
+
+    /**
+     * @param term a term
+     * @return true if the overlay changes (or removes) the term
+     */
+    private boolean isChanged( String term ) {
+        int hash = spread(term.hashCode());
+        int bit = hash & hashMask;
+        if ( (hashBits[bit >>> 6] & (1L << bit)) != 0 ) {
+            int slot = hash & mask;
+            String current;
+            while ( (current = termArray[slot]) != null ) {
+                if ( current.equals(term) ) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int getMaxPhraseLength() {
+        // phrases only match if the base matches them - the overlay doesn't change what kind of lexicon it is
+        int baseLength = base.getMaxPhraseLength();
+        return baseLength > 1 ? Math.max(baseLength, overlayPhraseLength) : 1;
+    }
+
+    @Override
+    public int matchPhrase( List<Token> sentence, int start, double[] valence ) {
+        int maxLength = getMaxPhraseLength();
+        if ( maxLength < 2 ) {
+            return 0;
+        }
+        if ( !changesPhrases ) {
+            return base.matchPhrase(sentence, start, valence);
+        }
+        // the overlay changes phrases: look up each phrase starting here, the longest first
+        String[] phraseArray = new String[Math.min(maxLength, sentence.size() - start)];
+        StringBuilder phrase = new StringBuilder(sentence.get(start).getValue().toLowerCase());
+        for ( int length = 2; length <= phraseArray.length; length++ ) {
+            phrase.append(' ').append(sentence.get(start + length - 1).getValue().toLowerCase());
+            phraseArray[length - 1] = phrase.toString();
+        }
+        for ( int length = phraseArray.length; length > 1; length-- ) {
+            double phraseValence = getValence(phraseArray[length - 1]);
+            if ( !Double.isNaN(phraseValence) ) {
+                valence[0] = phraseValence;
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void forEachTerm( Consumer<String> consumer ) {
+        base.forEachTerm(term -> {
+            if ( !isChanged(term) ) {
+                consumer.accept(term);
+            }
+        });
+        forEachAddedTerm(consumer);
+    }
+
+    /**
+     * visit the terms the overlay adds or changes, but not those it removes
+     * @param consumer receives each term
+     */
+    public void forEachAddedTerm( Consumer<String> consumer ) {
+        for ( int slot = 0; slot < termArray.length; slot++ ) {
+            if ( termArray[slot] != null && !Double.isNaN(valenceArray[slot]) ) {
+                consumer.accept(termArray[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return the shared base lexicon
+     */
+    public Lexicon getBase() {
+        return base;
+    }
+
+    /**
+     * @return the number of terms the overlay changes, adds or removes
+     */
+    public int getChangeCount() {
+        int count = 0;
+        for ( String term : termArray ) {
+            count += term != null ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static int wordCount( String term ) {
+        int count = 1;
+        for ( int i = 0; i < term.length(); i++ ) {
+            count += term.charAt(i) == ' ' ? 1 : 0;
+        }
+        return count;
+    }
+
+    // spread the high bits of a String hash into the low bits used for the table and bit set
+    private static int spread( int hash ) {
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,450 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import opennlp.tools.util.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * an on-disk cache of VaderNLP parses, so that re-scoring an unchanged text (with another
+ * lexicon, for another report) goes straight to Vader's scoring without running OpenNLP
+ *
+ * an entry is keyed on the SHA-256 of the text and the parser's fingerprint (its models, pos
+ * tagger and emoji table), so a change to the models never returns a stale parse.  the cache
+ * holds the whole parse of every sentence - it doesn't skip the sentences without lexicon words
+ * as Vader.analyseSentence(text, nlp) does, so that it stays valid for any lexicon.
+ *
+ * an entry is a file of its own, in a compact binary format: the distinct token and tag strings
+ * once, then each sentence's span and tokens as varint indexes into them, and a CRC32.  entries
+ * are written to a temporary file and renamed into place, so a reader (a thread, or another
+ * process sharing the directory) sees a whole entry or none; a damaged entry is a miss, and is
+ * removed.  the cache is bounded by size, evicting the least recently used entries (the file
+ * modification time carries the order over to the next run).  each process bounds the entries
+ * it knows of - it doesn't see the entries other processes add to a shared directory until it
+ * is opened again.
+ *
+ * the cache is thread-safe; the VaderNLP passed in must only be used by the calling thread.
+ * two threads that miss on the same text at the same time both parse it.
+ *
+ */
+public class ParseCache {
+
+    private static Logger logger = LoggerFactory.getLogger(ParseCache.class);
+
+    static final int MAGIC = 0x56504331; // "VPC1"
+    static final int VERSION = 1;
+
+    private static final String SUFFIX = ".parse";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // a temporary file this old was left by a process that died while writing it
+    private static final long STALE_TEMP_MILLIS = 60L * 60L * 1000L;
+
+    private final File directory;
+    private final long maxBytes;
+
+    // entry file name -> its size, least recently used first
+    private final LinkedHashMap<String, Long> entryMap = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * open (or create) a cache directory
+     * @param directory the directory of the cache, created if it doesn't exist
+     * @param maxBytes the most bytes of entries to keep
+     * @throws IOException if the directory can't be created
+     */
+    public ParseCache( File directory, long maxBytes ) throws IOException {
+        if ( maxBytes <= 0 ) {
+            throw new IllegalArgumentException("invalid cache size " + maxBytes);
+        }
+        if ( !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory() ) {
+            throw new IOException("can't create cache directory " + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        // the existing entries, least recently used first
+        File[] fileList = directory.listFiles();
+        if ( fileList != null ) {
+            List<File> entryList = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for ( File file : fileList ) {
+                if ( file.getName().endsWith(SUFFIX) ) {
+                    entryList.add(file);
+                } else if ( file.getName().endsWith(TEMP_SUFFIX) && now - file.lastModified() > STALE_TEMP_MILLIS ) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+            entryList.sort(Comparator.comparingLong(File::lastModified));
+            for ( File file : entryList ) {
+                entryMap.put(file.getName(), file.length());
+                totalBytes += file.length();
+            }
+        }
+        evict(null);
+    }
+
+    /**
+     * the parse of a text, from the cache or else parsed (and added to the cache)
+     * @param text the text to parse
+     * @param vaderNLP the parser to use on a miss
+     * @return the sentences of the text, as VaderNLP.parse() would return them
+     * @throws IOException if the parser fails
+     */
+    public List<List<Token>> parse( String text, VaderNLP vaderNLP ) throws IOException {
+        return parse(text, vaderNLP, null);
+    }
+
+    /**
+     * the parse of a text, from the cache or else parsed (and added to the cache)
+     * @param text the text to parse
+     * @param vaderNLP the parser to use on a miss
+     * @param spanList if not null, the span in text of each sentence is added to it
+     * @return the sentences of the text, as VaderNLP.parse() would return them
+     * @throws IOException if the parser fails
+     */
+    public List<List<Token>> parse( String text, VaderNLP vaderNLP, List<Span> spanList ) throws IOException {
+        if ( text == null ) {
+            return null;
+        }
+        byte[] key = key(text, vaderNLP.getFingerprint());
+        String name = toHex(key) + SUFFIX;
+        File file = new File(directory, name);
+
+        List<List<Token>> sentenceList = read(file, key, spanList);
+        if ( sentenceList != null ) {
+            synchronized ( this ) {
+                hitCount++;
+                if ( entryMap.get(name) == null ) { // written by another process since this cache was opened
+                    entryMap.put(name, file.length());
+                    totalBytes += file.length();
+                    evict(name);
+                }
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return sentenceList;
+        }
+
+        Span[] sentenceSpanList = vaderNLP.getSentenceSpans(text);
+        sentenceList = new ArrayList<>(sentenceSpanList.length);
+        for ( Span span : sentenceSpanList ) {
+            sentenceList.add(vaderNLP.parseSentence(span.getCoveredText(text).toString()));
+            if ( spanList != null ) {
+                spanList.add(span);
+            }
+        }
+        synchronized ( this ) {
+            missCount++;
+        }
+        try {
+            write(file, encode(key, sentenceSpanList, sentenceList));
+        } catch ( IOException ex ) {
+            logger.warn("can't write parse cache entry " + file + ": " + ex.getMessage()); // still a good parse
+        }
+        return sentenceList;
+    }
+
+    /**
+     * remove every entry
+     * @throws IOException if an entry can't be removed
+     */
+    public synchronized void clear() throws IOException {
+        for ( String name : entryMap.keySet() ) {
+            Files.deleteIfExists(new File(directory, name).toPath());
+        }
+        entryMap.clear();
+        totalBytes = 0;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the bytes of the entries in the cache
+     */
+    public synchronized long getSize() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public synchronized int getEntryCount() {
+        return entryMap.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the cache key of a text parsed by a parser with a fingerprint
+     */
+    private static byte[] key( String text, String fingerprint ) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch ( NoSuchAlgorithmException ex ) {
+            throw new IllegalStateException("SHA-256 not available", ex); // every jvm has it
+        }
+        digest.update((byte)VERSION);
+        digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    /**
+     * write an entry to a temporary file, and rename it into place
+     */
+    private void write( File file, byte[] data ) throws IOException {
+        if ( data.length > maxBytes ) {
+            return; // would evict everything, itself included
+        }
+        File temp = File.createTempFile("parse", TEMP_SUFFIX, directory);
+        try {
+            try ( OutputStream out = new FileOutputStream(temp) ) {
+                out.write(data);
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch ( AtomicMoveNotSupportedException ex ) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        synchronized ( this ) {
+            Long previous = entryMap.put(file.getName(), (long)data.length);
+            totalBytes += data.length - (previous != null ? previous : 0L);
+            evict(file.getName());
+        }
+    }
+
+    /**
+     * remove the least recently used entries until the cache fits its size
+     * @param keep the name of an entry not to remove, or null
+     */
+    private synchronized void evict( String keep ) throws IOException {
+        Iterator<Map.Entry<String, Long>> iterator = entryMap.entrySet().iterator();
+        while ( totalBytes > maxBytes && iterator.hasNext() ) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if ( entry.getKey().equals(keep) ) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= entry.getValue();
+            Files.deleteIfExists(new File(directory, entry.getKey()).toPath());
+        }
+    }
+
+    /**
+     * read an entry
+     * @return the sentences, or null if the entry doesn't exist or is damaged
+     */
+    private List<List<Token>> read( File file, byte[] key, List<Span> spanList ) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file.toPath());
+        } catch ( NoSuchFileException ex ) {
+            return null;
+        }
+        try {
+            List<Span> sentenceSpanList = new ArrayList<>();
+            List<List<Token>> sentenceList = decode(data, key, sentenceSpanList);
+            if ( sentenceList != null ) {
+                if ( spanList != null ) {
+                    spanList.addAll(sentenceSpanList);
+                }
+                return sentenceList;
+            }
+        } catch ( RuntimeException ex ) {
+            // damaged past its crc (e.g. a bad varint) - fall through
+        }
+        logger.warn("removing damaged parse cache entry " + file);
+        synchronized ( this ) {
+            Long size = entryMap.remove(file.getName());
+            totalBytes -= size != null ? size : 0L;
+        }
+        Files.deleteIfExists(file.toPath());
+        return null;
+    }
+
+    /**
+     * @return the binary form of a parse
+     */
+    static byte[] encode( byte[] key, Span[] spanList, List<List<Token>> sentenceList ) throws IOException {
+        // the distinct token values and tags
+        Map<String, Integer> stringMap = new HashMap<>();
+        List<String> stringList = new ArrayList<>();
+        for ( List<Token> sentence : sentenceList ) {
+            for ( Token token : sentence ) {
+                for ( String str : new String[] {token.getValue(), token.getPosTag()} ) {
+                    if ( str != null && !stringMap.containsKey(str) ) {
+                        stringMap.put(str, stringList.size());
+                        stringList.add(str);
+                    }
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(key);
+        writeVarint(out, stringList.size());
+        for ( String str : stringList ) {
+            byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, utf8.length);
+            out.write(utf8);
+        }
+        writeVarint(out, sentenceList.size());
+        int previousEnd = 0;
+        for ( int i = 0; i < sentenceList.size(); i++ ) {
+            // the spans in order, as the gap from the previous sentence and the length
+            writeVarint(out, spanList[i].getStart() - previousEnd);
+            writeVarint(out, spanList[i].getEnd() - spanList[i].getStart());
+            previousEnd = spanList[i].getEnd();
+            List<Token> sentence = sentenceList.get(i);
+            writeVarint(out, sentence.size());
+            for ( Token token : sentence ) {
+                writeVarint(out, stringMap.get(token.getValue()) << 1 | (token.isEmoji() ? 1 : 0));
+                writeVarint(out, token.getPosTag() != null ? stringMap.get(token.getPosTag()) + 1 : 0);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the parse of the binary form, or null if it isn't the entry of key
+     */
+    static List<List<Token>> decode( byte[] data, byte[] key, List<Span> spanList ) {
+        if ( data.length < 8 + key.length + 8 ) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 8);
+        ByteBuffer in = ByteBuffer.wrap(data);
+        if ( in.getLong(data.length - 8) != crc.getValue() || in.getInt() != MAGIC || in.getInt() != VERSION ) {
+            return null;
+        }
+        byte[] entryKey = new byte[key.length];
+        in.get(entryKey);
+        if ( !Arrays.equals(key, entryKey) ) {
+            return null;
+        }
+        String[] stringArray = new String[readVarint(in)];
+        for ( int i = 0; i < stringArray.length; i++ ) {
+            int length = readVarint(in);
+            stringArray[i] = new String(data, in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        }
+        int sentenceCount = readVarint(in);
+        List<List<Token>> sentenceList = new ArrayList<>(sentenceCount);
+        int previousEnd = 0;
+        for ( int i = 0; i < sentenceCount; i++ ) {
+            int start = previousEnd + readVarint(in);
+            int end = start + readVarint(in);
+            spanList.add(new Span(start, end));
+            previousEnd = end;
+            int tokenCount = readVarint(in);
+            List<Token> sentence = new ArrayList<>(tokenCount);
+            for ( int j = 0; j < tokenCount; j++ ) {
+                int value = readVarint(in);
+                int tag = readVarint(in);
+                Token token = new Token(stringArray[value >>> 1], tag > 0 ? stringArray[tag - 1] : null);
+                token.setEmoji((value & 1) != 0);
+                sentence.add(token);
+            }
+            sentenceList.add(sentence);
+        }
+        return sentenceList;
+    }
+
+    private static void writeVarint( DataOutputStream out, int value ) throws IOException {
+        while ( (value & ~0x7f) != 0 ) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint( ByteBuffer in ) {
+        int value = 0;
+        for ( int shift = 0; shift < 32; shift += 7 ) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if ( (b & 0x80) == 0 ) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("invalid varint");
+    }
+
+    private static String toHex( byte[] bytes ) {
+        StringBuilder sb = new StringBuilder();
+        for ( byte b : bytes ) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+}
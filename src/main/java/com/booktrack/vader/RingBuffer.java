@@ -0,0 +1,183 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * a bounded, lock-free, multi-producer multi-consumer queue
+ *
+ * each slot carries a sequence number that tells producers and consumers
+ * whose turn it is, so a slot is claimed with a single CAS on the head or tail
+ * counter and no locks are ever taken.  the capacity is rounded up to a power of two.
+ *
+ */
+public class RingBuffer<T> {
+
+    // spin this many times before yielding, and yield this many times before parking
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long PARK_NANOS = 50_000L;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> buffer;
+    private final AtomicLongArray sequence;
+
+    private final AtomicLong head = new AtomicLong(); // next position to read
+    private final AtomicLong tail = new AtomicLong(); // next position to write
+
+    public RingBuffer( int capacity ) {
+        if ( capacity < 1 ) {
+            throw new IllegalArgumentException("ring buffer capacity must be > 0");
+        }
+        int size = 1;
+        while ( size < capacity ) {
+            size = size << 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequence = new AtomicLongArray(size);
+        for ( int i = 0; i < size; i++ ) {
+            sequence.set(i, i);
+        }
+    }
+
+    /**
+     * add an item to the queue if there is room
+     * @param item the item to add, not null
+     * @return true if added, false if the queue is full
+     */
+    public boolean offer( T item ) {
+        if ( item == null ) {
+            throw new NullPointerException("ring buffer items can't be null");
+        }
+        long pos = tail.get();
+        while ( true ) {
+            int index = (int)(pos & mask);
+            long diff = sequence.get(index) - pos;
+            if ( diff == 0 ) {
+                if ( tail.compareAndSet(pos, pos + 1) ) {
+                    buffer.set(index, item);
+                    sequence.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if ( diff < 0 ) {
+                return false; // full
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * remove the item at the head of the queue
+     * @return the item, or null if the queue is empty
+     */
+    public T poll() {
+        long pos = head.get();
+        while ( true ) {
+            int index = (int)(pos & mask);
+            long diff = sequence.get(index) - (pos + 1);
+            if ( diff == 0 ) {
+                if ( head.compareAndSet(pos, pos + 1) ) {
+                    T item = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequence.lazySet(index, pos + mask + 1);
+                    return item;
+                }
+                pos = head.get();
+            } else if ( diff < 0 ) {
+                return null; // empty
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * add an item to the queue, waiting for room if it is full - this is
+     * what gives a producer backpressure from a slow consumer
+     * @param item the item to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void put( T item ) throws InterruptedException {
+        int attempt = 0;
+        while ( !offer(item) ) {
+            backoff(attempt++);
+        }
+    }
+
+    /**
+     * @return the number of items in the queue right now (approximate while it is in use)
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        if ( size < 0 ) {
+            return 0;
+        }
+        return (int)Math.min(size, capacity);
+    }
+
+    /**
+     * @return true if the queue has no items
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the maximum number of items in the queue
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * idle strategy for threads waiting on a ring buffer: spin, then yield, then park
+     * @param attempt the number of times the caller has already waited
+     * @throws InterruptedException if the thread was interrupted
+     */
+    static void backoff( int attempt ) throws InterruptedException {
+        if ( attempt < SPIN_TRIES ) {
+            return;
+        }
+        if ( attempt < SPIN_TRIES + YIELD_TRIES ) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        if ( Thread.interrupted() ) {
+            throw new InterruptedException();
+        }
+    }
+
+}
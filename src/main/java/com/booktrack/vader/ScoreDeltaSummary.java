@@ -0,0 +1,232 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.text.DecimalFormat;
+import java.util.*;
+import java.util.function.LongFunction;
+
+/**
+ * a summary of how sentence scores moved after a lexicon change
+ *
+ * use rescore() to score only the sentences a LexiconDiff affects, instead of the whole corpus.
+ *
+ */
+public class ScoreDeltaSummary {
+
+    // the compound score above / below which a sentence counts as positive / negative
+    private static final double POLARITY_THRESHOLD = 0.05;
+
+    // histogram of compound deltas over [-2, 2]
+    private static final int HISTOGRAM_BINS = 20;
+
+    private final int topSize;
+
+    private long rescoredCount;
+    private long changedCount;
+    private long missingCount;
+    private long polarityFlipCount;
+    private double deltaSum;
+    private double absDeltaSum;
+    private final long[] histogram = new long[HISTOGRAM_BINS];
+
+    // the largest absolute compound changes, smallest first
+    private final PriorityQueue<SentenceDelta> topQueue =
+            new PriorityQueue<>(Comparator.comparingDouble(SentenceDelta::getAbsDelta));
+
+    /**
+     * @param topSize the number of largest changes to keep
+     */
+    public ScoreDeltaSummary( int topSize ) {
+        this.topSize = topSize;
+    }
+
+    /**
+     * score again the sentences affected by a lexicon change
+     * @param index the index built when the sentences were scored with the old lexicon
+     * @param diff the difference between the old lexicon and vader's
+     * @param vader vader initialised with the new lexicon
+     * @param sentenceSource returns the tokens of a sentence by id (or null if it is gone)
+     * @param topSize the number of largest changes to keep
+     * @return the summary of the score changes
+     */
+    public static ScoreDeltaSummary rescore( TermIndex index, LexiconDiff diff, Vader vader,
+                                             LongFunction<List<Token>> sentenceSource, int topSize ) {
+        ScoreDeltaSummary summary = new ScoreDeltaSummary(topSize);
+        for ( long id : diff.getAffectedSentenceIds(index) ) {
+            List<Token> sentence = sentenceSource.apply(id);
+            VScore before = index.getScore(id);
+            if ( sentence == null || before == null ) {
+                summary.missingCount++;
+                continue;
+            }
+            summary.add(id, before, vader.analyseSentence(sentence));
+        }
+        return summary;
+    }
+
+    /**
+     * add the old and new score of a sentence
+     * @param sentenceId the id of the sentence
+     * @param before its score with the old lexicon
+     * @param after its score with the new lexicon
+     */
+    public void add( long sentenceId, VScore before, VScore after ) {
+        rescoredCount++;
+        double delta = after.getCompound() - before.getCompound();
+        if ( delta == 0.0 && after.getPositive() == before.getPositive() &&
+                after.getNegative() == before.getNegative() && after.getNeutral() == before.getNeutral() ) {
+            return;
+        }
+        changedCount++;
+        deltaSum += delta;
+        absDeltaSum += Math.abs(delta);
+        if ( polarity(before.getCompound()) != polarity(after.getCompound()) ) {
+            polarityFlipCount++;
+        }
+        int bin = (int)((delta + 2.0) / 4.0 * HISTOGRAM_BINS);
+        histogram[Math.max(0, Math.min(HISTOGRAM_BINS - 1, bin))]++;
+
+        if ( topSize > 0 ) {
+            topQueue.add(new SentenceDelta(sentenceId, before, after));
+            if ( topQueue.size() > topSize ) {
+                topQueue.poll();
+            }
+        }
+    }
+
+    private static int polarity( double compound ) {
+        if ( compound >= POLARITY_THRESHOLD ) {
+            return 1;
+        }
+        if ( compound <= -POLARITY_THRESHOLD ) {
+            return -1;
+        }
+        return 0;
+    }
+
+    public String toString() {
+        DecimalFormat df4 = new DecimalFormat("#.####");
+        return "rescored: " + rescoredCount + ", changed: " + changedCount + ", missing: " + missingCount +
+                ", polarity flips: " + polarityFlipCount + ", mean compound delta: " + df4.format(getMeanDelta()) +
+                ", mean abs compound delta: " + df4.format(getMeanAbsDelta()) + ", histogram[-2..2]: " + Arrays.toString(histogram);
+    }
+
+    /**
+     * @return the number of sentences scored again
+     */
+    public long getRescoredCount() {
+        return rescoredCount;
+    }
+
+    /**
+     * @return the number of sentences whose score changed
+     */
+    public long getChangedCount() {
+        return changedCount;
+    }
+
+    /**
+     * @return the number of affected sentences the sentence source or index didn't have
+     */
+    public long getMissingCount() {
+        return missingCount;
+    }
+
+    /**
+     * @return the number of sentences that went from positive / neutral / negative to another class
+     */
+    public long getPolarityFlipCount() {
+        return polarityFlipCount;
+    }
+
+    /**
+     * @return the mean compound change over the changed sentences
+     */
+    public double getMeanDelta() {
+        return changedCount > 0 ? deltaSum / changedCount : 0.0;
+    }
+
+    /**
+     * @return the mean absolute compound change over the changed sentences
+     */
+    public double getMeanAbsDelta() {
+        return changedCount > 0 ? absDeltaSum / changedCount : 0.0;
+    }
+
+    /**
+     * @return counts of compound changes in 20 equal bins from -2 to 2
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    /**
+     * @return the largest compound changes, largest first
+     */
+    public List<SentenceDelta> getLargestChanges() {
+        List<SentenceDelta> deltaList = new ArrayList<>(topQueue);
+        deltaList.sort(Comparator.comparingDouble(SentenceDelta::getAbsDelta).reversed());
+        return deltaList;
+    }
+
+    /**
+     * the old and new score of a single sentence
+     */
+    public static class SentenceDelta {
+
+        private final long sentenceId;
+        private final VScore before;
+        private final VScore after;
+
+        public SentenceDelta( long sentenceId, VScore before, VScore after ) {
+            this.sentenceId = sentenceId;
+            this.before = before;
+            this.after = after;
+        }
+
+        public String toString() {
+            return sentenceId + ": " + before + " -> " + after;
+        }
+
+        public long getSentenceId() {
+            return sentenceId;
+        }
+
+        public VScore getBefore() {
+            return before;
+        }
+
+        public VScore getAfter() {
+            return after;
+        }
+
+        public double getAbsDelta() {
+            return Math.abs(after.getCompound() - before.getCompound());
+        }
+    }
+
+}
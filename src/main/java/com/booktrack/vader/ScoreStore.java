@@ -0,0 +1,393 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * a columnar on-disk store of sentence scores, written by a ScoreStoreWriter and memory-mapped
+ * for reading, so that mood arcs, passages and the like can be queried without scoring again
+ *
+ * rows are grouped by document and sorted by offset.  the document table (loaded on open) gives
+ * the rows of a document, offsets within a document are binary searched on the mapped columns,
+ * and a sparse block index (min / max compound and score sums per 128 rows) lets aggregates add
+ * whole blocks and top-k queries skip the blocks that can't make it into the result.
+ *
+ * reads are absolute, so a store can be shared between threads.
+ *
+ */
+public class ScoreStore {
+
+    static final int HEADER_SIZE = 4 * 5 + 8 * 3;
+    static final int BLOCK_ENTRY_SIZE = 4 + 4 + 8 * 4;
+
+    private final int rowCount;
+    private final int blockSize;
+    private final IntBuffer starts;
+    private final IntBuffer ends;
+    private final FloatBuffer[] scores; // pos, neu, neg, compound
+    private final ByteBuffer blocks;
+
+    private final String[] documentIds;
+    private final int[] documentFirstRow; // plus the row count as the last entry
+    private final Map<String, Integer> documentMap = new HashMap<>();
+
+    private ScoreStore( int rowCount, int blockSize, IntBuffer starts, IntBuffer ends, FloatBuffer[] scores,
+                        ByteBuffer blocks, String[] documentIds, int[] documentFirstRow ) {
+        this.rowCount = rowCount;
+        this.blockSize = blockSize;
+        this.starts = starts;
+        this.ends = ends;
+        this.scores = scores;
+        this.blocks = blocks;
+        this.documentIds = documentIds;
+        this.documentFirstRow = documentFirstRow;
+        for ( int i = 0; i < documentIds.length; i++ ) {
+            documentMap.put(documentIds[i], i);
+        }
+    }
+
+    /**
+     * open a store written by ScoreStoreWriter
+     * @param file the store file
+     * @return the store
+     * @throws IOException if the file can't be read or isn't a score store
+     */
+    public static ScoreStore open( File file ) throws IOException {
+        try ( RandomAccessFile raf = new RandomAccessFile(file, "r");
+              FileChannel channel = raf.getChannel() ) {
+
+            if ( channel.size() < HEADER_SIZE ) {
+                throw new IOException("not a score store: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if ( header.getInt() != ScoreStoreWriter.MAGIC ) {
+                throw new IOException("not a score store: " + file);
+            }
+            if ( header.getInt() != ScoreStoreWriter.VERSION ) {
+                throw new IOException("unsupported score store version: " + file);
+            }
+            int rowCount = header.getInt();
+            int documentCount = header.getInt();
+            int blockSize = header.getInt();
+            long columnsOffset = header.getLong();
+            long blocksOffset = header.getLong();
+            long documentsOffset = header.getLong();
+
+            long columnSize = (long)rowCount * 4;
+            IntBuffer starts = channel.map(FileChannel.MapMode.READ_ONLY, columnsOffset, columnSize).asIntBuffer();
+            IntBuffer ends = channel.map(FileChannel.MapMode.READ_ONLY, columnsOffset + columnSize, columnSize).asIntBuffer();
+            FloatBuffer[] scores = new FloatBuffer[4];
+            for ( int column = 0; column < 4; column++ ) {
+                scores[column] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        columnsOffset + columnSize * (2 + column), columnSize).asFloatBuffer();
+            }
+            ByteBuffer blocks = channel.map(FileChannel.MapMode.READ_ONLY, blocksOffset, documentsOffset - blocksOffset);
+
+            // the document table is small, read it onto the heap
+            String[] documentIds = new String[documentCount];
+            int[] documentFirstRow = new int[documentCount + 1];
+            channel.position(documentsOffset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            for ( int i = 0; i < documentCount; i++ ) {
+                documentFirstRow[i] = in.readInt();
+                in.readInt(); // row count, implied by the next document's first row
+                byte[] name = new byte[in.readInt()];
+                in.readFully(name);
+                documentIds[i] = new String(name, StandardCharsets.UTF_8);
+            }
+            documentFirstRow[documentCount] = rowCount;
+
+            return new ScoreStore(rowCount, blockSize, starts, ends, scores, blocks, documentIds, documentFirstRow);
+        }
+    }
+
+    /**
+     * @return the number of sentences in the store
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the documents in the store, in row order
+     */
+    public List<String> getDocumentIds() {
+        return Collections.unmodifiableList(Arrays.asList(documentIds));
+    }
+
+    /**
+     * @param documentId the document
+     * @return the rows of the document as { first row, row after the last }, or null if it isn't stored
+     */
+    public int[] getRows( String documentId ) {
+        Integer document = documentMap.get(documentId);
+        if ( document == null ) {
+            return null;
+        }
+        return new int[] { documentFirstRow[document], documentFirstRow[document + 1] };
+    }
+
+    /**
+     * find the sentences of a document that overlap a character range, e.g. a chapter
+     * @param documentId the document
+     * @param startOffset the start of the range
+     * @param endOffset the end of the range (exclusive)
+     * @return the rows as { first row, row after the last }, or null if the document isn't stored
+     */
+    public int[] findRows( String documentId, int startOffset, int endOffset ) {
+        int[] rows = getRows(documentId);
+        if ( rows == null ) {
+            return null;
+        }
+        // the first sentence ending after the range starts, the first starting at or after the range ends
+        int first = lowerBound(ends, rows[0], rows[1], startOffset + 1);
+        int last = lowerBound(starts, first, rows[1], endOffset);
+        return new int[] { first, last };
+    }
+
+    /**
+     * @return the first row in [from, to) whose value is >= key (the column is sorted over that range)
+     */
+    private static int lowerBound( IntBuffer column, int from, int to, int key ) {
+        while ( from < to ) {
+            int mid = (from + to) >>> 1;
+            if ( column.get(mid) < key ) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @param row the row
+     * @return the document of a row
+     */
+    public String getDocumentId( int row ) {
+        int index = Arrays.binarySearch(documentFirstRow, 0, documentIds.length, row);
+        if ( index < 0 ) {
+            index = -index - 2;
+        }
+        // skip past documents without rows
+        while ( index + 1 < documentIds.length && documentFirstRow[index + 1] <= row ) {
+            index++;
+        }
+        return documentIds[index];
+    }
+
+    public int getStart( int row ) {
+        return starts.get(row);
+    }
+
+    public int getEnd( int row ) {
+        return ends.get(row);
+    }
+
+    public float getPositive( int row ) {
+        return scores[0].get(row);
+    }
+
+    public float getNeutral( int row ) {
+        return scores[1].get(row);
+    }
+
+    public float getNegative( int row ) {
+        return scores[2].get(row);
+    }
+
+    public float getCompound( int row ) {
+        return scores[3].get(row);
+    }
+
+    /**
+     * @param row the row
+     * @return the score of a row (at float precision)
+     */
+    public VScore getScore( int row ) {
+        return new VScore(getPositive(row), getNeutral(row), getNegative(row), getCompound(row));
+    }
+
+    /**
+     * aggregate the scores of a range of rows, adding whole blocks from the block index
+     * @param from the first row
+     * @param to the row after the last
+     * @return the aggregate
+     */
+    public Aggregate aggregate( int from, int to ) {
+        Aggregate aggregate = new Aggregate();
+        int row = Math.max(0, from);
+        to = Math.min(rowCount, to);
+        while ( row < to ) {
+            if ( row % blockSize == 0 && row + blockSize <= to ) {
+                int entry = (row / blockSize) * BLOCK_ENTRY_SIZE;
+                aggregate.count += blockSize;
+                aggregate.minCompound = Math.min(aggregate.minCompound, blocks.getFloat(entry));
+                aggregate.maxCompound = Math.max(aggregate.maxCompound, blocks.getFloat(entry + 4));
+                for ( int column = 0; column < 4; column++ ) {
+                    aggregate.sum[column] += blocks.getDouble(entry + 8 + column * 8);
+                }
+                row += blockSize;
+            } else {
+                float compound = scores[3].get(row);
+                aggregate.count++;
+                aggregate.minCompound = Math.min(aggregate.minCompound, compound);
+                aggregate.maxCompound = Math.max(aggregate.maxCompound, compound);
+                for ( int column = 0; column < 4; column++ ) {
+                    aggregate.sum[column] += scores[column].get(row);
+                }
+                row++;
+            }
+        }
+        return aggregate;
+    }
+
+    /**
+     * the mood arc of a range of rows: the mean compound of consecutive windows of rows
+     * @param from the first row
+     * @param to the row after the last
+     * @param windowRows the number of rows per window (the last window may be shorter)
+     * @return the mean compound of each window
+     */
+    public double[] getWindowAverages( int from, int to, int windowRows ) {
+        if ( windowRows <= 0 ) {
+            throw new IllegalArgumentException("windowRows must be > 0");
+        }
+        from = Math.max(0, from);
+        to = Math.min(rowCount, to);
+        int windows = Math.max(0, (to - from + windowRows - 1) / windowRows);
+        double[] averages = new double[windows];
+        for ( int w = 0; w < windows; w++ ) {
+            int start = from + w * windowRows;
+            averages[w] = aggregate(start, Math.min(to, start + windowRows)).getMeanCompound();
+        }
+        return averages;
+    }
+
+    /**
+     * find the most negative (or most positive) sentences in a range of rows, skipping every
+     * block whose compound range can't beat the current k-th best
+     * @param from the first row
+     * @param to the row after the last
+     * @param k the number of rows to return
+     * @param mostNegative true for the lowest compound scores, false for the highest
+     * @return the rows, best first
+     */
+    public int[] getTopRows( int from, int to, int k, boolean mostNegative ) {
+        from = Math.max(0, from);
+        to = Math.min(rowCount, to);
+        if ( k <= 0 || from >= to ) {
+            return new int[0];
+        }
+        // sign so that larger is always better
+        float sign = mostNegative ? -1.0f : 1.0f;
+        // the worst of the best k at the head
+        PriorityQueue<int[]> queue = new PriorityQueue<>(k + 1, (a, b) -> {
+            int result = Float.compare(sign * scores[3].get(a[0]), sign * scores[3].get(b[0]));
+            return result != 0 ? result : Integer.compare(b[0], a[0]);
+        });
+        int row = from;
+        while ( row < to ) {
+            int block = row / blockSize;
+            int blockEnd = Math.min(to, (block + 1) * blockSize);
+            if ( queue.size() == k ) {
+                int entry = block * BLOCK_ENTRY_SIZE;
+                float best = mostNegative ? -blocks.getFloat(entry) : blocks.getFloat(entry + 4);
+                if ( best <= sign * scores[3].get(queue.peek()[0]) ) {
+                    row = blockEnd; // nothing in this block beats the k-th best
+                    continue;
+                }
+            }
+            for ( ; row < blockEnd; row++ ) {
+                if ( queue.size() < k ) {
+                    queue.add(new int[] { row });
+                } else if ( sign * scores[3].get(row) > sign * scores[3].get(queue.peek()[0]) ) {
+                    queue.poll();
+                    queue.add(new int[] { row });
+                }
+            }
+        }
+        int[] rows = new int[queue.size()];
+        for ( int i = rows.length - 1; i >= 0; i-- ) {
+            rows[i] = queue.poll()[0];
+        }
+        return rows;
+    }
+
+    /**
+     * the totals of a range of rows
+     */
+    public static class Aggregate {
+
+        private int count;
+        private final double[] sum = new double[4];
+        private float minCompound = Float.POSITIVE_INFINITY;
+        private float maxCompound = Float.NEGATIVE_INFINITY;
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getMeanPositive() {
+            return count > 0 ? sum[0] / count : 0.0;
+        }
+
+        public double getMeanNeutral() {
+            return count > 0 ? sum[1] / count : 0.0;
+        }
+
+        public double getMeanNegative() {
+            return count > 0 ? sum[2] / count : 0.0;
+        }
+
+        public double getMeanCompound() {
+            return count > 0 ? sum[3] / count : 0.0;
+        }
+
+        /**
+         * @return the lowest compound score, NaN without rows
+         */
+        public double getMinCompound() {
+            return count > 0 ? minCompound : Double.NaN;
+        }
+
+        /**
+         * @return the highest compound score, NaN without rows
+         */
+        public double getMaxCompound() {
+            return count > 0 ? maxCompound : Double.NaN;
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * collects sentence scores and writes them as a ScoreStore
+ *
+ * the rows are written grouped by document (in the order each document was first added)
+ * and sorted by start offset inside a document, one column per field.
+ *
+ */
+public class ScoreStoreWriter {
+
+    static final int MAGIC = 0x56535353; // "VSSS"
+    static final int VERSION = 1;
+
+    // rows per block of the sparse block index
+    static final int BLOCK_SIZE = 128;
+
+    // document id -> its number, in the order first seen
+    private final Map<String, Integer> documentMap = new LinkedHashMap<>();
+
+    private int[] documentArray = new int[1024];
+    private int[] startArray = new int[1024];
+    private int[] endArray = new int[1024];
+    private float[] scoreArray = new float[1024 * 4]; // pos, neu, neg, compound per row
+    private int rowCount = 0;
+
+    public ScoreStoreWriter() {
+    }
+
+    /**
+     * add the score of a sentence
+     * @param documentId the document the sentence is from
+     * @param start the offset of the sentence in the document
+     * @param end the offset just past the sentence
+     * @param score its vader score
+     */
+    public void add( String documentId, int start, int end, VScore score ) {
+        if ( rowCount == startArray.length ) {
+            documentArray = Arrays.copyOf(documentArray, rowCount * 2);
+            startArray = Arrays.copyOf(startArray, rowCount * 2);
+            endArray = Arrays.copyOf(endArray, rowCount * 2);
+            scoreArray = Arrays.copyOf(scoreArray, rowCount * 2 * 4);
+        }
+        Integer document = documentMap.get(documentId);
+        if ( document == null ) {
+            document = documentMap.size();
+            documentMap.put(documentId, document);
+        }
+        documentArray[rowCount] = document;
+        startArray[rowCount] = start;
+        endArray[rowCount] = end;
+        scoreArray[rowCount * 4] = (float)score.getPositive();
+        scoreArray[rowCount * 4 + 1] = (float)score.getNeutral();
+        scoreArray[rowCount * 4 + 2] = (float)score.getNegative();
+        scoreArray[rowCount * 4 + 3] = (float)score.getCompound();
+        rowCount++;
+    }
+
+    /**
+     * @return the number of sentences added so far
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * write the store to file
+     *
+     * layout: header | start, end (ints) and pos, neu, neg, compound (floats) columns |
+     *         blocks (min / max compound, sums of the four scores per BLOCK_SIZE rows) | documents
+     *
+     * @param file the file to write
+     * @throws IOException if the write fails
+     */
+    public void write( File file ) throws IOException {
+
+        Integer[] order = new Integer[rowCount];
+        for ( int i = 0; i < rowCount; i++ ) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> documentArray[a] != documentArray[b] ?
+                Integer.compare(documentArray[a], documentArray[b]) : Integer.compare(startArray[a], startArray[b]));
+
+        int blockCount = (rowCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long columnsOffset = ScoreStore.HEADER_SIZE;
+        long blocksOffset = columnsOffset + (long)rowCount * 4 * 6;
+        long documentsOffset = blocksOffset + (long)blockCount * ScoreStore.BLOCK_ENTRY_SIZE;
+
+        try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) ) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rowCount);
+            out.writeInt(documentMap.size());
+            out.writeInt(BLOCK_SIZE);
+            out.writeLong(columnsOffset);
+            out.writeLong(blocksOffset);
+            out.writeLong(documentsOffset);
+
+            for ( int index : order ) {
+                out.writeInt(startArray[index]);
+            }
+            for ( int index : order ) {
+                out.writeInt(endArray[index]);
+            }
+            for ( int column = 0; column < 4; column++ ) {
+                for ( int index : order ) {
+                    out.writeFloat(scoreArray[index * 4 + column]);
+                }
+            }
+
+            for ( int block = 0; block < blockCount; block++ ) {
+                float min = Float.POSITIVE_INFINITY;
+                float max = Float.NEGATIVE_INFINITY;
+                double[] sum = new double[4];
+                for ( int row = block * BLOCK_SIZE; row < Math.min(rowCount, (block + 1) * BLOCK_SIZE); row++ ) {
+                    int index = order[row];
+                    min = Math.min(min, scoreArray[index * 4 + 3]);
+                    max = Math.max(max, scoreArray[index * 4 + 3]);
+                    for ( int column = 0; column < 4; column++ ) {
+                        sum[column] += scoreArray[index * 4 + column];
+                    }
+                }
+                out.writeFloat(min);
+                out.writeFloat(max);
+                for ( double value : sum ) {
+                    out.writeDouble(value);
+                }
+            }
+
+            // documents are contiguous after sorting, so the first row of each is a running count
+            int[] documentRows = new int[documentMap.size()];
+            for ( int i = 0; i < rowCount; i++ ) {
+                documentRows[documentArray[i]]++;
+            }
+            int firstRow = 0;
+            for ( Map.Entry<String, Integer> entry : documentMap.entrySet() ) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(firstRow);
+                out.writeInt(documentRows[entry.getValue()]);
+                out.writeInt(name.length);
+                out.write(name);
+                firstRow += documentRows[entry.getValue()];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.util.List;
+
+/**
+ * a sentence of a document together with its vader score
+ *
+ */
+public class ScoredSentence {
+
+    private String documentId; // the document this sentence came from
+    private int sentenceIndex; // the position of the sentence inside its document
+    private String text; // the text of the sentence
+    private int start = -1; // the offset of the sentence in its document, -1 if not known
+    private int end = -1; // the offset just past the sentence
+    private List<Token> sentence; // the parsed sentence
+    private VScore score; // the vader score for the sentence
+    private Throwable error; // why the sentence couldn't be scored, its score is then null
+
+    public ScoredSentence() {
+    }
+
+    public ScoredSentence( String documentId, int sentenceIndex, String text, List<Token> sentence, VScore score ) {
+        this.documentId = documentId;
+        this.sentenceIndex = sentenceIndex;
+        this.text = text;
+        this.sentence = sentence;
+        this.score = score;
+    }
+
+    // pretty print
+    public String toString() {
+        return documentId + ":" + sentenceIndex + " " + (error != null ? "failed: " + error.getMessage() : score);
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public int getSentenceIndex() {
+        return sentenceIndex;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public void setEnd(int end) {
+        this.end = end;
+    }
+
+    public List<Token> getSentence() {
+        return sentence;
+    }
+
+    public VScore getScore() {
+        return score;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public void setError(Throwable error) {
+        this.error = error;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * the sentence-level part of the vader algorithm: the "but" re-weighting of the word scores,
+ * their sum, the exclamation and question mark amplifiers, the normalized compound score and
+ * the positive / negative / neutral proportions
+ *
+ * this class does it one sentence at a time.  on Java 17+ getInstance() returns a subclass
+ * (in the multi-release part of the jar) that scores a batch one sentence per SIMD lane with
+ * the incubating Vector API, if the JVM was started with --add-modules jdk.incubator.vector.
+ * each lane adds up its sentence's word scores in the same order as this class, with the same
+ * operations, so both give bit-identical scores.
+ *
+ */
+public class SentenceAggregator {
+
+    private static Logger logger = LoggerFactory.getLogger(SentenceAggregator.class);
+
+    // normalization constant, approximates the max expected value of a sum
+    static final double ALPHA = 15.0;
+
+    private static final String VECTOR_AGGREGATOR = "com.booktrack.vader.VectorSentenceAggregator";
+
+    private static final SentenceAggregator instance = load();
+
+    protected SentenceAggregator() {
+    }
+
+    /**
+     * @return the vector aggregator if this JVM can run it, otherwise the scalar one
+     */
+    public static SentenceAggregator getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the scalar aggregator
+     */
+    public static SentenceAggregator getScalarInstance() {
+        return instance.getClass() == SentenceAggregator.class ? instance : new SentenceAggregator();
+    }
+
+    private static SentenceAggregator load() {
+        try {
+            SentenceAggregator aggregator = (SentenceAggregator)Class.forName(VECTOR_AGGREGATOR).getDeclaredConstructor().newInstance();
+            logger.debug("SentenceAggregator: using the vector api");
+            return aggregator;
+        } catch ( ReflectiveOperationException | LinkageError ex ) {
+            // before Java 17, not run from the jar, or without the jdk.incubator.vector module
+            return new SentenceAggregator();
+        }
+    }
+
+    /**
+     * score every sentence of a batch
+     * @param batch the batch, its scores are set
+     */
+    public void aggregate( SentenceBatch batch ) {
+        aggregate(batch, 0);
+    }
+
+    /**
+     * score the sentences of a batch from a sentence on, one at a time
+     * @param batch the batch
+     * @param from the first sentence to score
+     */
+    protected void aggregate( SentenceBatch batch, int from ) {
+        double[] score = new double[4];
+        for ( int i = from; i < batch.size; i++ ) {
+            aggregate(batch.scoreArray, batch.offsetArray[i], batch.offsetArray[i + 1], batch.butArray[i],
+                    batch.exclamationArray[i], batch.questionArray[i], score, null);
+            batch.positiveArray[i] = score[0];
+            batch.neutralArray[i] = score[1];
+            batch.negativeArray[i] = score[2];
+            batch.compoundArray[i] = score[3];
+        }
+    }
+
+    /**
+     * score a sentence from its word scores
+     * @param sentiments the word scores
+     * @param from the first word score of the sentence
+     * @param to the end of its word scores
+     * @param butIndex the index of "but" in the sentence with punctuation, -1 if none
+     * @param epCount the number of exclamation marks
+     * @param qmCount the number of question marks
+     * @param score set to the positive, neutral, negative and compound score
+     * @param trace the trace to add the sentence rules to, or null
+     */
+    static void aggregate( double[] sentiments, int from, int to, int butIndex, int epCount, int qmCount,
+                           double[] score, ExplainTrace trace ) {
+
+        // do the sum of the total
+        double sum = 0.0;
+        for ( int j = 0; j < to - from; j++ ) {
+            double sentimentScore = butWeighted(sentiments[from + j], j, butIndex);
+            sum = sum + sentimentScore;
+            // the but index counts punctuation, the sentiments don't - the trace shows the word affected
+            if ( trace != null && butIndex >= 0 && j != butIndex && sentiments[from + j] != 0.0 ) {
+                trace.record(trace.getWordToken(j), ExplainTrace.Rule.BUT, butIndex, sentiments[from + j], sentimentScore);
+            }
+        }
+
+        double posSum = 0.0;
+        double negSum = 0.0;
+        double neutralCount = 0.0;
+        for ( int j = 0; j < to - from; j++ ) {
+            double sentimentScore = butWeighted(sentiments[from + j], j, butIndex);
+            if ( sentimentScore > 0.0 ) {
+                posSum = posSum + sentimentScore + 1.0; // compensates for neutral words that are counted as 1
+            }
+            if ( sentimentScore < 0.0 ) {
+                negSum = negSum + sentimentScore - 1.0; // when used with math.fabs(), compensates for neutrals
+            }
+            if ( sentimentScore == 0.0 ) {
+                neutralCount = neutralCount + 1;
+            }
+        }
+
+        score(sum, posSum, negSum, neutralCount, epCount, qmCount, score, trace);
+    }
+
+    /**
+     * the rest of the sentence rules, from the sums of a sentence's (re-weighted) word scores
+     * @param sum the sum of the word scores
+     * @param posSum the sum of the positive word scores, each plus 1
+     * @param negSum the sum of the negative word scores, each minus 1
+     * @param neutralCount the number of words that score 0
+     * @param epCount the number of exclamation marks
+     * @param qmCount the number of question marks
+     * @param score set to the positive, neutral, negative and compound score
+     * @param trace the trace to add the sentence rules to, or null
+     */
+    static void score( double sum, double posSum, double negSum, double neutralCount, int epCount, int qmCount,
+                       double[] score, ExplainTrace trace ) {
+
+        if ( epCount > 4 ) {
+            epCount = 4;
+        }
+        double emAmplifier = (double)epCount * 0.292; // empirically derived mean sentiment intensity rating increase for exclamation points
+
+        double sumBefore = sum;
+        if ( sum > 0.0 ) {
+            sum = sum + emAmplifier;
+        } else if ( sum < 0.0 ) {
+            sum = sum - emAmplifier;
+        }
+        if ( trace != null && sum != sumBefore ) {
+            trace.record(-1, ExplainTrace.Rule.EXCLAMATION, -1, sumBefore, sum);
+        }
+
+        // check for added emphasis resulting from question marks (2 or 3+)
+        double qmAmplifier = 0.0;
+        if ( qmCount > 1 ) {
+            if ( qmCount <= 3 ) {
+                qmAmplifier = (double)qmCount * 0.18;
+            } else {
+                qmAmplifier = 0.96;
+            }
+            sumBefore = sum;
+            if ( sum > 0.0 ) {
+                sum = sum + qmAmplifier;
+            } else if ( sum < 0.0 ) {
+                sum = sum - qmAmplifier;
+            }
+            if ( trace != null && sum != sumBefore ) {
+                trace.record(-1, ExplainTrace.Rule.QUESTION, -1, sumBefore, sum);
+            }
+        }
+
+        double compound = normalize(sum);
+
+        // adjust amplifiers
+        if ( posSum > Math.abs(negSum) ) {
+            posSum = posSum + qmAmplifier + emAmplifier;
+        } else if ( posSum < Math.abs(negSum) ) {
+            negSum = negSum - (qmAmplifier + emAmplifier);
+        }
+
+        double total = posSum + Math.abs(negSum) + neutralCount;
+        if ( total > 0.0 ) { // make sure values are valid
+            posSum = Math.abs(posSum / total);
+            negSum = Math.abs(negSum / total);
+            neutralCount = Math.abs(neutralCount / total);
+        } else {
+            posSum = 0.0;
+            negSum = 0.0;
+            neutralCount = 0.0;
+        }
+
+        score[0] = posSum;
+        score[1] = neutralCount;
+        score[2] = negSum;
+        score[3] = compound;
+    }
+
+    /**
+     * the "but" rule: the words before "but" count half, the words after it one and a half
+     * @param score the score of a word
+     * @param j the index of the word in the sentence without punctuation
+     * @param butIndex the index of "but" in the sentence with punctuation, -1 if none
+     * @return the re-weighted score
+     */
+    static double butWeighted( double score, int j, int butIndex ) {
+        if ( butIndex >= 0 ) {
+            if ( j < butIndex ) {
+                return score * 0.5;
+            } else if ( j > butIndex ) {
+                return score * 1.5;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * normalize a score using an alpha magic value
+     * @param score the score to normalize
+     * @return the normalized score
+     */
+    static double normalize( double score ) {
+        return score / Math.sqrt( (score *score) + ALPHA );
+    }
+
+}
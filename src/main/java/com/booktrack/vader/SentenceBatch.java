@@ -0,0 +1,149 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.util.Arrays;
+
+/**
+ * the word scores of many sentences, flattened into primitive arrays for the sentence-level
+ * part of the vader algorithm (see SentenceAggregator)
+ *
+ * Vader.addSentence() runs the per-word rules of a sentence and appends its word scores, with
+ * what the sentence-level rules need to know of it: the index of its "but", and its number of
+ * exclamation and question marks.  the aggregator then fills in the score of every sentence.
+ * a batch can be cleared and re-used, it allocates nothing once it has grown to size.
+ *
+ */
+public class SentenceBatch {
+
+    // the word scores of sentence i are scoreArray[offsetArray[i] .. offsetArray[i + 1])
+    double[] scoreArray;
+    int[] offsetArray;
+
+    // per sentence: the index of "but" in the sentence with punctuation (-1 if none), the number of '!' and '?'
+    int[] butArray;
+    int[] exclamationArray;
+    int[] questionArray;
+
+    // per sentence: the score, set by the aggregator
+    double[] positiveArray;
+    double[] neutralArray;
+    double[] negativeArray;
+    double[] compoundArray;
+
+    int size = 0;
+
+    public SentenceBatch() {
+        this(64);
+    }
+
+    /**
+     * @param capacity the number of sentences to make room for
+     */
+    public SentenceBatch( int capacity ) {
+        capacity = Math.max(1, capacity);
+        scoreArray = new double[capacity * 16];
+        offsetArray = new int[capacity + 1];
+        butArray = new int[capacity];
+        exclamationArray = new int[capacity];
+        questionArray = new int[capacity];
+        positiveArray = new double[capacity];
+        neutralArray = new double[capacity];
+        negativeArray = new double[capacity];
+        compoundArray = new double[capacity];
+    }
+
+    /**
+     * append a sentence, growing the arrays as needed
+     * @param wordCount the number of word scores of the sentence
+     * @param butIndex the index of "but" in the sentence, -1 if none
+     * @param exclamationCount the number of exclamation marks
+     * @param questionCount the number of question marks
+     * @return the offset in scoreArray to write the word scores to
+     */
+    int add( int wordCount, int butIndex, int exclamationCount, int questionCount ) {
+        if ( size == butArray.length ) {
+            int capacity = size * 2;
+            offsetArray = Arrays.copyOf(offsetArray, capacity + 1);
+            butArray = Arrays.copyOf(butArray, capacity);
+            exclamationArray = Arrays.copyOf(exclamationArray, capacity);
+            questionArray = Arrays.copyOf(questionArray, capacity);
+            positiveArray = new double[capacity]; // results aren't kept while adding
+            neutralArray = new double[capacity];
+            negativeArray = new double[capacity];
+            compoundArray = new double[capacity];
+        }
+        int offset = offsetArray[size];
+        if ( offset + wordCount > scoreArray.length ) {
+            scoreArray = Arrays.copyOf(scoreArray, Math.max(offset + wordCount, scoreArray.length * 2));
+        }
+        butArray[size] = butIndex;
+        exclamationArray[size] = exclamationCount;
+        questionArray[size] = questionCount;
+        offsetArray[size + 1] = offset + wordCount;
+        size++;
+        return offset;
+    }
+
+    /**
+     * empty the batch for re-use
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the number of sentences in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i the sentence
+     * @return the number of word scores of the sentence
+     */
+    public int getWordCount( int i ) {
+        return offsetArray[i + 1] - offsetArray[i];
+    }
+
+    /**
+     * @param i the sentence
+     * @return its score - only valid after SentenceAggregator.aggregate()
+     */
+    public VScore getScore( int i ) {
+        return new VScore(positiveArray[i], neutralArray[i], negativeArray[i], compoundArray[i]);
+    }
+
+    /**
+     * @param i the sentence
+     * @return its compound score - only valid after SentenceAggregator.aggregate()
+     */
+    public double getCompound( int i ) {
+        return compoundArray[i];
+    }
+
+}
@@ -0,0 +1,571 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.text.DecimalFormat;
+import java.util.*;
+
+/**
+ * live sentiment per entity (product, author, channel, ...) over a sliding time window
+ *
+ * time is cut into buckets of a fixed length, and each key keeps a ring of the last
+ * bucketCount buckets: a count, the score sums and a small histogram of compound scores
+ * per bucket, all in flat primitive arrays indexed by key slot.  a bucket that has fallen
+ * out of the ring is reset lazily when its ring position is next written, and ignored by
+ * queries until then, so expiring old windows costs nothing.
+ *
+ * memory is bounded by maxKeys - when all slots are taken, the least recently updated of a
+ * few randomly sampled keys is evicted.  roughly maxKeys * bucketCount * (52 + 2 * histogramBins)
+ * bytes are allocated up front.
+ *
+ * the most negative keys are tracked per bucket with a weighted space-saving sketch of each
+ * key's negative mass (the sum of -compound over its negative sentences), the sketches of a
+ * window are merged at query time and the candidates ranked by their exact totals.
+ *
+ * not thread-safe - feed it from a single thread, e.g. the sink of a VaderPipeline.
+ *
+ */
+public class SentimentAggregator {
+
+    // the compound score at or below which a sentence counts as negative
+    private static final double NEGATIVE_THRESHOLD = -0.05;
+
+    // the number of keys looked at to pick one to evict
+    private static final int EVICTION_SAMPLE = 8;
+
+    // the space-saving sketch keeps this many candidates per requested top key
+    private static final int SKETCH_FACTOR = 16;
+
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final int maxKeys;
+    private final int histogramBins;
+
+    private final KeyIndex keyIndex;
+    private final long[] lastBucket; // per slot, the latest bucket written
+
+    // per slot * bucketCount + ring position
+    private final long[] epoch; // the bucket number the cell holds
+    private final int[] count;
+    private final double[] positiveSum;
+    private final double[] neutralSum;
+    private final double[] negativeSum;
+    private final double[] compoundSum;
+    private final double[] negativeMass;
+    private final char[] histogram; // saturating counts, histogramBins per cell
+
+    // the most negative keys, per ring position
+    private final SpaceSaving[] negativeSketch;
+    private final long[] sketchEpoch;
+
+    private final Random random = new Random(0);
+    private long newestBucket = Long.MIN_VALUE;
+    private long droppedCount;
+    private long evictedCount;
+
+    /**
+     * @param bucketMillis the length of a time bucket in milliseconds
+     * @param bucketCount the number of buckets kept per key (the longest window is bucketMillis * bucketCount)
+     * @param maxKeys the maximum number of keys tracked at once
+     * @param histogramBins the number of compound histogram bins over [-1, 1] per bucket (0 for no quantiles)
+     * @param topSize the number of most negative keys the sketches are sized for
+     */
+    public SentimentAggregator( long bucketMillis, int bucketCount, int maxKeys, int histogramBins, int topSize ) {
+        if ( bucketMillis <= 0 || bucketCount <= 0 || maxKeys <= 0 || histogramBins < 0 || topSize <= 0 ) {
+            throw new IllegalArgumentException("invalid aggregator size");
+        }
+        long cells = (long)maxKeys * bucketCount;
+        if ( cells * Math.max(1, histogramBins) > Integer.MAX_VALUE - 8 ) {
+            throw new IllegalArgumentException("maxKeys * bucketCount * histogramBins too large");
+        }
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+        this.maxKeys = maxKeys;
+        this.histogramBins = histogramBins;
+
+        keyIndex = new KeyIndex(maxKeys);
+        lastBucket = new long[maxKeys];
+        epoch = new long[(int)cells];
+        Arrays.fill(epoch, Long.MIN_VALUE);
+        count = new int[(int)cells];
+        positiveSum = new double[(int)cells];
+        neutralSum = new double[(int)cells];
+        negativeSum = new double[(int)cells];
+        compoundSum = new double[(int)cells];
+        negativeMass = new double[(int)cells];
+        histogram = new char[(int)cells * histogramBins];
+
+        negativeSketch = new SpaceSaving[bucketCount];
+        sketchEpoch = new long[bucketCount];
+        for ( int i = 0; i < bucketCount; i++ ) {
+            negativeSketch[i] = new SpaceSaving(topSize * SKETCH_FACTOR);
+            sketchEpoch[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * add the score of a sentence
+     * @param key the entity the sentence is about
+     * @param timeMillis when the sentence was written
+     * @param score its vader score
+     */
+    public void add( String key, long timeMillis, VScore score ) {
+        long bucket = Math.floorDiv(timeMillis, bucketMillis);
+        if ( newestBucket != Long.MIN_VALUE && bucket <= newestBucket - bucketCount ) {
+            droppedCount++; // older than any window
+            return;
+        }
+        newestBucket = Math.max(newestBucket, bucket);
+
+        int slot = slotFor(key);
+        int position = (int)Math.floorMod(bucket, (long)bucketCount);
+        int cell = slot * bucketCount + position;
+        if ( epoch[cell] != bucket ) {
+            if ( epoch[cell] > bucket ) {
+                droppedCount++; // its ring position already holds a newer bucket
+                return;
+            }
+            resetCell(cell, bucket);
+        }
+        lastBucket[slot] = Math.max(lastBucket[slot], bucket);
+
+        double compound = score.getCompound();
+        count[cell]++;
+        positiveSum[cell] += score.getPositive();
+        neutralSum[cell] += score.getNeutral();
+        negativeSum[cell] += score.getNegative();
+        compoundSum[cell] += compound;
+        if ( histogramBins > 0 ) {
+            int index = cell * histogramBins + bin(compound);
+            if ( histogram[index] < Character.MAX_VALUE ) {
+                histogram[index]++;
+            }
+        }
+
+        if ( compound <= NEGATIVE_THRESHOLD ) {
+            negativeMass[cell] -= compound;
+            if ( sketchEpoch[position] != bucket ) {
+                negativeSketch[position].clear();
+                sketchEpoch[position] = bucket;
+            }
+            negativeSketch[position].add(key, -compound);
+        }
+    }
+
+    /**
+     * summarise a key over the window ending now
+     * @param key the entity
+     * @param nowMillis the end of the window
+     * @param windowMillis the length of the window (at most bucketMillis * bucketCount)
+     * @return the summary, or null if the key isn't tracked
+     */
+    public WindowSummary query( String key, long nowMillis, long windowMillis ) {
+        int slot = keyIndex.get(key);
+        if ( slot < 0 ) {
+            return null;
+        }
+        long last = Math.floorDiv(nowMillis, bucketMillis);
+        long first = last - windowBuckets(windowMillis) + 1;
+        WindowSummary summary = new WindowSummary(key, histogramBins);
+        for ( int cell = slot * bucketCount; cell < (slot + 1) * bucketCount; cell++ ) {
+            if ( epoch[cell] >= first && epoch[cell] <= last ) {
+                summary.count += count[cell];
+                summary.positiveSum += positiveSum[cell];
+                summary.neutralSum += neutralSum[cell];
+                summary.negativeSum += negativeSum[cell];
+                summary.compoundSum += compoundSum[cell];
+                summary.negativeMass += negativeMass[cell];
+                for ( int b = 0; b < histogramBins; b++ ) {
+                    summary.histogram[b] += histogram[cell * histogramBins + b];
+                }
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * the keys with the largest negative mass over the window ending now
+     * @param nowMillis the end of the window
+     * @param windowMillis the length of the window (at most bucketMillis * bucketCount)
+     * @param topSize the number of keys to return
+     * @return the most negative keys, most negative first
+     */
+    public List<WindowSummary> getMostNegative( long nowMillis, long windowMillis, int topSize ) {
+        long last = Math.floorDiv(nowMillis, bucketMillis);
+        long first = last - windowBuckets(windowMillis) + 1;
+
+        // merge the sketches of the window into candidate keys
+        Map<String, Double> candidateMap = new HashMap<>();
+        for ( int position = 0; position < bucketCount; position++ ) {
+            if ( sketchEpoch[position] >= first && sketchEpoch[position] <= last ) {
+                negativeSketch[position].addTo(candidateMap);
+            }
+        }
+        List<String> candidateList = new ArrayList<>(candidateMap.keySet());
+        candidateList.sort((a, b) -> Double.compare(candidateMap.get(b), candidateMap.get(a)));
+
+        // rank the strongest candidates by their exact totals
+        List<WindowSummary> summaryList = new ArrayList<>();
+        for ( int i = 0; i < candidateList.size() && i < topSize * SKETCH_FACTOR; i++ ) {
+            WindowSummary summary = query(candidateList.get(i), nowMillis, windowMillis);
+            if ( summary != null && summary.negativeMass > 0.0 ) {
+                summaryList.add(summary);
+            }
+        }
+        summaryList.sort((a, b) -> Double.compare(b.negativeMass, a.negativeMass));
+        return summaryList.size() > topSize ? new ArrayList<>(summaryList.subList(0, topSize)) : summaryList;
+    }
+
+    /**
+     * @return the number of keys tracked
+     */
+    public int getKeyCount() {
+        return keyIndex.size();
+    }
+
+    /**
+     * @return the number of scores too old for the window that were ignored
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return the number of keys evicted to make room for new ones
+     */
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    private int windowBuckets( long windowMillis ) {
+        long buckets = (windowMillis + bucketMillis - 1) / bucketMillis;
+        return (int)Math.max(1, Math.min(bucketCount, buckets));
+    }
+
+    private int bin( double compound ) {
+        int b = (int)((compound + 1.0) / 2.0 * histogramBins);
+        return Math.max(0, Math.min(histogramBins - 1, b));
+    }
+
+    private void resetCell( int cell, long bucket ) {
+        epoch[cell] = bucket;
+        count[cell] = 0;
+        positiveSum[cell] = 0.0;
+        neutralSum[cell] = 0.0;
+        negativeSum[cell] = 0.0;
+        compoundSum[cell] = 0.0;
+        negativeMass[cell] = 0.0;
+        Arrays.fill(histogram, cell * histogramBins, (cell + 1) * histogramBins, (char)0);
+    }
+
+    /**
+     * @return the slot of a key, taking a free slot (evicting a key if need be) for a new one
+     */
+    private int slotFor( String key ) {
+        int slot = keyIndex.get(key);
+        if ( slot >= 0 ) {
+            return slot;
+        }
+        if ( keyIndex.size() == maxKeys ) {
+            int victim = random.nextInt(maxKeys);
+            for ( int i = 1; i < EVICTION_SAMPLE; i++ ) {
+                int sample = random.nextInt(maxKeys);
+                if ( lastBucket[sample] < lastBucket[victim] ) {
+                    victim = sample;
+                }
+            }
+            keyIndex.remove(keyIndex.keyAt(victim));
+            evictedCount++;
+        }
+        slot = keyIndex.put(key);
+        lastBucket[slot] = Long.MIN_VALUE;
+        for ( int cell = slot * bucketCount; cell < (slot + 1) * bucketCount; cell++ ) {
+            epoch[cell] = Long.MIN_VALUE;
+        }
+        return slot;
+    }
+
+    /**
+     * the totals of a key over a window
+     */
+    public static class WindowSummary {
+
+        private final String key;
+        private long count;
+        private double positiveSum;
+        private double neutralSum;
+        private double negativeSum;
+        private double compoundSum;
+        private double negativeMass;
+        private final long[] histogram;
+
+        WindowSummary( String key, int histogramBins ) {
+            this.key = key;
+            this.histogram = new long[histogramBins];
+        }
+
+        public String toString() {
+            DecimalFormat df4 = new DecimalFormat("#.####");
+            return key + ": count " + count + ", mean compound " + df4.format(getMeanCompound()) +
+                    ", negative mass " + df4.format(negativeMass);
+        }
+
+        /**
+         * estimate a quantile of the compound scores from the histogram
+         * @param q the quantile, 0..1
+         * @return the estimated compound score, NaN without a histogram or scores
+         */
+        public double getCompoundQuantile( double q ) {
+            long total = 0;
+            for ( long binCount : histogram ) {
+                total += binCount;
+            }
+            if ( total == 0 ) {
+                return Double.NaN;
+            }
+            double target = Math.max(0.0, Math.min(1.0, q)) * total;
+            double binWidth = 2.0 / histogram.length;
+            long seen = 0;
+            for ( int b = 0; b < histogram.length; b++ ) {
+                if ( histogram[b] > 0 && seen + histogram[b] >= target ) {
+                    // interpolate inside the bin
+                    return -1.0 + binWidth * (b + (target - seen) / histogram[b]);
+                }
+                seen += histogram[b];
+            }
+            return 1.0;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanPositive() {
+            return count > 0 ? positiveSum / count : 0.0;
+        }
+
+        public double getMeanNeutral() {
+            return count > 0 ? neutralSum / count : 0.0;
+        }
+
+        public double getMeanNegative() {
+            return count > 0 ? negativeSum / count : 0.0;
+        }
+
+        public double getMeanCompound() {
+            return count > 0 ? compoundSum / count : 0.0;
+        }
+
+        /**
+         * @return the sum of -compound over the negative sentences
+         */
+        public double getNegativeMass() {
+            return negativeMass;
+        }
+    }
+
+    /**
+     * weighted space-saving (Metwally et al.) - keeps the heaviest keys of a stream in
+     * fixed space, over-estimating a key's weight by at most the weight it took over.
+     * the keys are kept in a min-heap on weight, so the lightest is replaced in O(log n)
+     */
+    private static class SpaceSaving {
+
+        private final String[] keys;
+        private final double[] weights;
+        private final Map<String, Integer> indexMap = new HashMap<>(); // key -> heap position
+        private int size;
+
+        SpaceSaving( int capacity ) {
+            keys = new String[capacity];
+            weights = new double[capacity];
+        }
+
+        void add( String key, double weight ) {
+            Integer index = indexMap.get(key);
+            if ( index == null ) {
+                if ( size < keys.length ) {
+                    index = size++;
+                    weights[index] = 0.0;
+                } else {
+                    // replace the lightest key, inheriting its weight as the error bound
+                    index = 0;
+                    indexMap.remove(keys[0]);
+                }
+                keys[index] = key;
+                indexMap.put(key, index);
+                siftUp(index);
+                index = indexMap.get(key);
+            }
+            weights[index] += weight;
+            siftDown(index);
+        }
+
+        void addTo( Map<String, Double> weightMap ) {
+            for ( int i = 0; i < size; i++ ) {
+                weightMap.merge(keys[i], weights[i], Double::sum);
+            }
+        }
+
+        void clear() {
+            indexMap.clear();
+            Arrays.fill(keys, 0, size, null);
+            size = 0;
+        }
+
+        private void siftUp( int index ) {
+            while ( index > 0 ) {
+                int parent = (index - 1) / 2;
+                if ( weights[parent] <= weights[index] ) {
+                    break;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown( int index ) {
+            while ( true ) {
+                int smallest = index;
+                int left = 2 * index + 1;
+                if ( left < size && weights[left] < weights[smallest] ) {
+                    smallest = left;
+                }
+                if ( left + 1 < size && weights[left + 1] < weights[smallest] ) {
+                    smallest = left + 1;
+                }
+                if ( smallest == index ) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap( int i, int j ) {
+            String key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            double weight = weights[i];
+            weights[i] = weights[j];
+            weights[j] = weight;
+            indexMap.put(keys[i], i);
+            indexMap.put(keys[j], j);
+        }
+    }
+
+    /**
+     * open addressing (linear probing) map of key to a dense slot number
+     */
+    private static class KeyIndex {
+
+        private final String[] slotKey; // slot -> key, null when free
+        private final int[] table; // slot + 1, 0 when empty
+        private final int mask;
+        private final int[] freeSlots;
+        private int freeCount;
+        private int size;
+
+        KeyIndex( int maxKeys ) {
+            int capacity = Integer.highestOneBit(Math.max(2, maxKeys) * 2 - 1) << 1;
+            slotKey = new String[maxKeys];
+            table = new int[capacity];
+            mask = capacity - 1;
+            freeSlots = new int[maxKeys];
+            for ( int i = 0; i < maxKeys; i++ ) {
+                freeSlots[i] = maxKeys - 1 - i;
+            }
+            freeCount = maxKeys;
+        }
+
+        int size() {
+            return size;
+        }
+
+        String keyAt( int slot ) {
+            return slotKey[slot];
+        }
+
+        int get( String key ) {
+            for ( int i = hash(key) & mask; table[i] != 0; i = (i + 1) & mask ) {
+                if ( slotKey[table[i] - 1].equals(key) ) {
+                    return table[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * add a key that isn't in the index, there must be a free slot
+         */
+        int put( String key ) {
+            int slot = freeSlots[--freeCount];
+            slotKey[slot] = key;
+            int i = hash(key) & mask;
+            while ( table[i] != 0 ) {
+                i = (i + 1) & mask;
+            }
+            table[i] = slot + 1;
+            size++;
+            return slot;
+        }
+
+        void remove( String key ) {
+            int i = hash(key) & mask;
+            while ( table[i] != 0 && !slotKey[table[i] - 1].equals(key) ) {
+                i = (i + 1) & mask;
+            }
+            if ( table[i] == 0 ) {
+                return;
+            }
+            int slot = table[i] - 1;
+            slotKey[slot] = null;
+            freeSlots[freeCount++] = slot;
+            size--;
+
+            // shift back the entries after it that would no longer be found
+            int hole = i;
+            for ( int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask ) {
+                int home = hash(slotKey[table[j] - 1]) & mask;
+                if ( ((j - home) & mask) >= ((j - hole) & mask) ) {
+                    table[hole] = table[j];
+                    hole = j;
+                }
+            }
+            table[hole] = 0;
+        }
+
+        private static int hash( String key ) {
+            int h = key.hashCode() * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+}
@@ -0,0 +1,421 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * scores a set of files across several worker processes
+ *
+ * the files are cut into shards at paragraph breaks (blank lines), and handed out one at a time to
+ * the ShardWorkers connected to the coordinator's local socket - either worker processes launched
+ * by the coordinator, or workers started elsewhere with Main -worker -connect host:port.  a shard
+ * whose worker fails, dies or times out is handed out again, up to maxAttempts times, and launched
+ * workers that die are replaced.  whatever order the shards finish in, the sink receives the
+ * sentences in file order, and within a file in text order, numbered from 0 per file.
+ *
+ */
+public class ShardCoordinator {
+
+    private static Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    // a shard travels as one ShardProtocol frame, keep it well inside the frame limit
+    private static final int MAX_SHARD_BYTES = 1 << 28;
+
+    private final Consumer<ScoredSentence> sink;
+
+    private int workers = 2; // worker processes to launch
+    private int port = 0; // the port to listen on, 0 for any free port
+    private int shardSize = 1 << 20; // the target shard size in bytes
+    private int maxAttempts = 3; // attempts per shard before the run fails
+    private int workerTimeout = 600000; // milliseconds to wait for a shard's result
+    private List<String> workerArgs = new ArrayList<>(); // extra Main arguments for launched workers
+
+    private List<Shard> shardList;
+    private final BlockingQueue<Shard> pendingQueue = new LinkedBlockingQueue<>();
+    private final Map<Integer, List<ScoredSentence>> completedMap = new HashMap<>(); // guarded by itself
+    private final List<Process> processList = new ArrayList<>();
+    private final Set<Socket> socketSet = ConcurrentHashMap.newKeySet();
+    private volatile boolean finished;
+    private volatile IOException failure;
+
+    /**
+     * @param sink receives every scored sentence, in order, on the thread calling run()
+     */
+    public ShardCoordinator( Consumer<ScoredSentence> sink ) {
+        this.sink = sink;
+    }
+
+    /**
+     * score the files
+     * @param fileList the files, in output order
+     * @throws IOException if a shard fails maxAttempts times, or the files can't be read
+     */
+    public void run( List<File> fileList ) throws IOException {
+        shardList = partition(fileList);
+        pendingQueue.addAll(shardList);
+        logger.info("coordinator: " + fileList.size() + " files in " + shardList.size() + " shards");
+
+        try ( ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress()) ) {
+            Thread acceptThread = new Thread(() -> accept(serverSocket), "shard-accept");
+            acceptThread.setDaemon(true);
+            acceptThread.start();
+            logger.info("coordinator: listening on " + serverSocket.getLocalSocketAddress());
+
+            for ( int i = 0; i < workers; i++ ) {
+                launchWorker(serverSocket.getLocalPort());
+            }
+            int restarts = 0;
+
+            // emit the shards in order as they complete
+            Map<String, Integer> sentenceCountMap = new HashMap<>();
+            for ( Shard shard : shardList ) {
+                List<ScoredSentence> resultList;
+                synchronized ( completedMap ) {
+                    while ( (resultList = completedMap.remove(shard.id)) == null ) {
+                        if ( failure != null ) {
+                            throw failure;
+                        }
+                        try {
+                            completedMap.wait(1000);
+                        } catch ( InterruptedException ex ) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("interrupted waiting for shard " + shard.id);
+                        }
+                        if ( completedMap.containsKey(shard.id) ) {
+                            continue;
+                        }
+                        // replace launched workers that have died
+                        for ( int i = 0; i < processList.size(); i++ ) {
+                            if ( !processList.get(i).isAlive() ) {
+                                if ( restarts >= workers * maxAttempts ) {
+                                    throw new IOException("too many worker processes died");
+                                }
+                                logger.warn("coordinator: worker process exited with " + processList.get(i).exitValue() + ", launching another");
+                                processList.remove(i--);
+                                launchWorker(serverSocket.getLocalPort());
+                                restarts++;
+                            }
+                        }
+                    }
+                }
+                int sentenceIndex = sentenceCountMap.getOrDefault(shard.documentId, 0);
+                for ( ScoredSentence scoredSentence : resultList ) {
+                    // renumber from the shard's sentences to the file's
+                    sink.accept(new ScoredSentence(shard.documentId, sentenceIndex++, scoredSentence.getText(),
+                            null, scoredSentence.getScore()));
+                }
+                sentenceCountMap.put(shard.documentId, sentenceIndex);
+            }
+        } finally {
+            // idle workers are told to shut down, give them a moment before cutting them off
+            finished = true;
+            for ( Process process : processList ) {
+                try {
+                    if ( !process.waitFor(10, TimeUnit.SECONDS) ) {
+                        process.destroyForcibly();
+                    }
+                } catch ( InterruptedException ex ) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for ( Socket socket : socketSet ) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * cut the files into shards of about shardSize bytes, ending at a blank line where possible.
+     * each shard is mapped on its own so files beyond 2GB work, and a shard ends at the first blank
+     * line within shardSize bytes of its target, failing that at the first line break, failing that
+     * at a hard cut on a character boundary
+     */
+    private List<Shard> partition( List<File> fileList ) throws IOException {
+        List<Shard> shards = new ArrayList<>();
+        int target = Math.min(shardSize, MAX_SHARD_BYTES / 2);
+        for ( File file : fileList ) {
+            try ( RandomAccessFile raf = new RandomAccessFile(file, "r");
+                  FileChannel channel = raf.getChannel() ) {
+                long length = channel.size();
+                long start = 0;
+                do {
+                    long remaining = length - start;
+                    if ( remaining <= target ) {
+                        shards.add(new Shard(shards.size(), file, start, length));
+                        break;
+                    }
+                    int window = (int)Math.min(remaining, 2L * target);
+                    // one byte past the window, to tell whether a hard cut lands inside a character
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(remaining, window + 1L));
+                    int end = findCut(buffer, target, window, window == remaining);
+                    if ( buffer.get(end - 1) != '\n' && end < remaining ) {
+                        logger.warn("coordinator: no line break in " + file + " between bytes " + (start + target) + " and " + (start + end) + ", cutting the shard there");
+                    }
+                    shards.add(new Shard(shards.size(), file, start, start + end));
+                    start += end;
+                } while ( start < length );
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * @return where to end a shard mapped in buffer: the first blank line at or after target, else the
+     * first line break, else window (the end of the file when atEnd) moved back to a character boundary
+     */
+    private static int findCut( MappedByteBuffer buffer, int target, int window, boolean atEnd ) {
+        int lineEnd = -1;
+        for ( int offset = target; offset < window; offset++ ) {
+            if ( isParagraphEnd(buffer, offset) ) {
+                return offset;
+            }
+            if ( lineEnd < 0 && buffer.get(offset - 1) == '\n' ) {
+                lineEnd = offset;
+            }
+        }
+        if ( atEnd ) {
+            return window;
+        }
+        if ( lineEnd >= 0 ) {
+            return lineEnd;
+        }
+        int cut = window;
+        while ( cut > target && (buffer.get(cut) & 0xC0) == 0x80 ) { // a UTF-8 continuation byte
+            cut--;
+        }
+        return cut;
+    }
+
+    /**
+     * @return true if the byte before offset ends a blank line ("\n\n", optionally with "\r")
+     */
+    private static boolean isParagraphEnd( MappedByteBuffer buffer, int offset ) {
+        if ( buffer.get(offset - 1) != '\n' ) {
+            return false;
+        }
+        int previous = offset - 2;
+        if ( previous >= 0 && buffer.get(previous) == '\r' ) {
+            previous--;
+        }
+        return previous >= 0 && buffer.get(previous) == '\n';
+    }
+
+    private void launchWorker( int localPort ) throws IOException {
+        if ( finished ) {
+            return;
+        }
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("-worker");
+        command.add("-connect");
+        command.add(InetAddress.getLoopbackAddress().getHostAddress() + ":" + localPort);
+        command.addAll(workerArgs);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.inheritIO(); // the workers log alongside the coordinator
+        processList.add(builder.start());
+    }
+
+    private void accept( ServerSocket serverSocket ) {
+        while ( !finished ) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> serve(socket), "shard-worker-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch ( IOException ex ) {
+                if ( !finished ) {
+                    logger.error("coordinator: accept failed", ex);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * hand out shards to a single worker connection until the run is finished
+     */
+    private void serve( Socket socket ) {
+        socketSet.add(socket);
+        Shard shard = null;
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(workerTimeout);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            if ( in.readByte() != ShardProtocol.HELLO || in.readInt() != ShardProtocol.MAGIC ||
+                    in.readInt() != ShardProtocol.VERSION ) {
+                throw new IOException("not a vader shard worker");
+            }
+
+            while ( !finished ) {
+                shard = pendingQueue.poll(100, TimeUnit.MILLISECONDS);
+                if ( shard == null ) {
+                    continue;
+                }
+                out.writeByte(ShardProtocol.SHARD);
+                out.writeInt(shard.id);
+                ShardProtocol.writeBytes(out, shard.read());
+                out.flush();
+
+                int type = in.readByte();
+                int shardId = in.readInt();
+                if ( shardId != shard.id ) {
+                    throw new IOException("worker answered shard " + shardId + " for shard " + shard.id);
+                }
+                if ( type == ShardProtocol.ERROR ) {
+                    logger.warn("coordinator: shard " + shard.id + " failed: " + in.readUTF());
+                    retry(shard);
+                    shard = null;
+                    continue;
+                }
+                if ( type != ShardProtocol.RESULT ) {
+                    throw new IOException("unexpected frame type " + type);
+                }
+                int count = in.readInt();
+                List<ScoredSentence> resultList = new ArrayList<>(count);
+                for ( int i = 0; i < count; i++ ) {
+                    String text = new String(ShardProtocol.readBytes(in), StandardCharsets.UTF_8);
+                    VScore score = new VScore(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                    resultList.add(new ScoredSentence(shard.documentId, i, text, null, score));
+                }
+                synchronized ( completedMap ) {
+                    completedMap.put(shard.id, resultList);
+                    completedMap.notifyAll();
+                }
+                shard = null;
+            }
+            out.writeByte(ShardProtocol.SHUTDOWN);
+            out.flush();
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        } catch ( IOException ex ) {
+            if ( !finished ) {
+                logger.warn("coordinator: worker connection failed: " + ex.getMessage());
+            }
+        } finally {
+            if ( shard != null && !finished ) {
+                retry(shard);
+            }
+            socketSet.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private void retry( Shard shard ) {
+        shard.attempts++;
+        if ( shard.attempts >= maxAttempts ) {
+            synchronized ( completedMap ) {
+                failure = new IOException("shard " + shard.id + " of " + shard.documentId + " failed " + shard.attempts + " times");
+                completedMap.notifyAll();
+            }
+        } else {
+            pendingQueue.add(shard);
+        }
+    }
+
+    private static void closeQuietly( Socket socket ) {
+        try {
+            socket.close();
+        } catch ( IOException ex ) {
+            logger.debug("close failed", ex);
+        }
+    }
+
+    public void setWorkers( int workers ) {
+        this.workers = workers;
+    }
+
+    public void setPort( int port ) {
+        this.port = port;
+    }
+
+    public void setShardSize( int shardSize ) {
+        if ( shardSize < 1 ) {
+            throw new IllegalArgumentException("shardSize must be at least 1");
+        }
+        this.shardSize = shardSize;
+    }
+
+    public void setMaxAttempts( int maxAttempts ) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void setWorkerTimeout( int workerTimeout ) {
+        this.workerTimeout = workerTimeout;
+    }
+
+    public void setWorkerArgs( List<String> workerArgs ) {
+        this.workerArgs = workerArgs;
+    }
+
+    /**
+     * a byte range of a file
+     */
+    private static class Shard {
+
+        final int id;
+        final File file;
+        final String documentId;
+        final long start;
+        final long end;
+        volatile int attempts;
+
+        Shard( int id, File file, long start, long end ) {
+            this.id = id;
+            this.file = file;
+            this.documentId = file.getPath();
+            this.start = start;
+            this.end = end;
+        }
+
+        byte[] read() throws IOException {
+            byte[] bytes = new byte[(int)(end - start)];
+            try ( RandomAccessFile raf = new RandomAccessFile(file, "r") ) {
+                raf.seek(start);
+                raf.readFully(bytes);
+            }
+            return bytes;
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * the frames exchanged between a ShardCoordinator and its ShardWorkers
+ *
+ * every frame starts with a type byte:
+ *   HELLO    worker to coordinator: int magic, int version
+ *   SHARD    coordinator to worker: int shard id, bytes text
+ *   RESULT   worker to coordinator: int shard id, int count, count * (bytes sentence, 4 doubles pos/neu/neg/compound)
+ *   ERROR    worker to coordinator: int shard id, utf message
+ *   SHUTDOWN coordinator to worker: no body
+ * where bytes is an int length followed by that many bytes.
+ *
+ */
+class ShardProtocol {
+
+    static final int MAGIC = 0x56534844; // "VSHD"
+    static final int VERSION = 1;
+
+    static final byte HELLO = 1;
+    static final byte SHARD = 2;
+    static final byte RESULT = 3;
+    static final byte ERROR = 4;
+    static final byte SHUTDOWN = 5;
+
+    // refuse frames larger than this, a corrupt length shouldn't exhaust the heap
+    private static final int MAX_BYTES = 1 << 30;
+
+    private ShardProtocol() {
+    }
+
+    static void writeBytes( DataOutputStream out, byte[] bytes ) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes( DataInputStream in ) throws IOException {
+        int length = in.readInt();
+        if ( length < 0 || length > MAX_BYTES ) {
+            throw new IOException("invalid frame length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+}
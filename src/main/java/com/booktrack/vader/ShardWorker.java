@@ -0,0 +1,123 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * a worker process of a ShardCoordinator - connects to the coordinator, and scores the
+ * shards it is sent until it is told to shut down (or the connection drops)
+ *
+ */
+public class ShardWorker {
+
+    private static Logger logger = LoggerFactory.getLogger(ShardWorker.class);
+
+    private final Vader vader;
+    private final VaderNLP vaderNLP;
+
+    /**
+     * @param vader the initialised vader
+     * @param vaderNLP the initialised nlp parser
+     */
+    public ShardWorker( Vader vader, VaderNLP vaderNLP ) {
+        this.vader = vader;
+        this.vaderNLP = vaderNLP;
+    }
+
+    /**
+     * connect to a coordinator and score its shards
+     * @param host the coordinator's host
+     * @param port the coordinator's port
+     * @throws IOException if the connection fails
+     */
+    public void run( String host, int port ) throws IOException {
+        try ( Socket socket = new Socket(host, port) ) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+            out.writeByte(ShardProtocol.HELLO);
+            out.writeInt(ShardProtocol.MAGIC);
+            out.writeInt(ShardProtocol.VERSION);
+            out.flush();
+
+            while ( true ) {
+                int type;
+                try {
+                    type = in.readByte();
+                } catch ( EOFException ex ) {
+                    logger.debug("coordinator closed the connection");
+                    return;
+                }
+                if ( type == ShardProtocol.SHUTDOWN ) {
+                    return;
+                }
+                if ( type != ShardProtocol.SHARD ) {
+                    throw new IOException("unexpected frame type " + type);
+                }
+                int shardId = in.readInt();
+                String text = new String(ShardProtocol.readBytes(in)); // decoded like Main reads a file
+                score(shardId, text, out);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * score a shard and write its result (or an error) frame
+     */
+    private void score( int shardId, String text, DataOutputStream out ) throws IOException {
+        String[] sentenceList;
+        VScore[] scoreList;
+        try {
+            sentenceList = vaderNLP.getSentences(text);
+            scoreList = vader.analyseSentences(sentenceList, vaderNLP);
+        } catch ( Exception ex ) {
+            logger.error("shard " + shardId + " failed", ex);
+            out.writeByte(ShardProtocol.ERROR);
+            out.writeInt(shardId);
+            out.writeUTF(String.valueOf(ex.getMessage()));
+            return;
+        }
+        out.writeByte(ShardProtocol.RESULT);
+        out.writeInt(shardId);
+        out.writeInt(sentenceList.length);
+        for ( int i = 0; i < sentenceList.length; i++ ) {
+            ShardProtocol.writeBytes(out, sentenceList[i].getBytes(StandardCharsets.UTF_8));
+            out.writeDouble(scoreList[i].getPositive());
+            out.writeDouble(scoreList[i].getNeutral());
+            out.writeDouble(scoreList[i].getNegative());
+            out.writeDouble(scoreList[i].getCompound());
+        }
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * scores the sentences of many tenants on a fixed set of threads, fairly between tenants
+ *
+ * every tenant has its own queue, and the threads take work from the tenants with queued work
+ * by deficit round robin: each turn a tenant is granted a quantum of characters, and may run
+ * requests while its credit covers their length.  so a tenant that submits a flood of requests
+ * (or a few huge ones) gets the same share of the threads as any other busy tenant, and can't
+ * hold up the requests of a tenant that submits one sentence now and then.
+ *
+ */
+public class TenantScheduler {
+
+    private static Logger logger = LoggerFactory.getLogger(TenantScheduler.class);
+
+    private final VaderNLP vaderNLP;
+    private final int threadCount;
+
+    // the characters of work a tenant may run per turn
+    private int quantum = 1024;
+
+    // the most requests a tenant may have waiting, further requests are rejected
+    private int maxQueued = 10000;
+
+    private final Map<String, TenantQueue> tenantMap = new HashMap<>();
+    private final ArrayDeque<TenantQueue> activeQueue = new ArrayDeque<>(); // tenants with queued work
+    private final List<Thread> threadList = new ArrayList<>();
+    private boolean closed = false;
+
+    /**
+     * @param vaderNLP an initialised nlp parser, copied for each thread
+     * @param threadCount the number of scoring threads
+     */
+    public TenantScheduler( VaderNLP vaderNLP, int threadCount ) {
+        this.vaderNLP = vaderNLP;
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * start the scoring threads
+     */
+    public synchronized void start() {
+        if ( !threadList.isEmpty() ) {
+            throw new IllegalStateException("scheduler already started");
+        }
+        for ( int i = 0; i < threadCount; i++ ) {
+            // the OpenNLP classes aren't thread-safe, each thread gets its own parser
+            final VaderNLP nlp = vaderNLP.copy();
+            Thread thread = new Thread(() -> run(nlp), "vader-tenant-" + i);
+            thread.setDaemon(true);
+            threadList.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * add or replace a tenant
+     * @param tenantId the id of the tenant
+     * @param vader the tenant's vader, e.g. from Vader.forTenant()
+     */
+    public synchronized void setTenant( String tenantId, Vader vader ) {
+        TenantQueue tenant = tenantMap.get(tenantId);
+        if ( tenant == null ) {
+            tenantMap.put(tenantId, new TenantQueue(tenantId, vader));
+        } else {
+            tenant.vader = vader; // requests already queued are scored with the new vader
+        }
+    }
+
+    /**
+     * remove a tenant - its queued requests are still scored
+     * @param tenantId the id of the tenant
+     */
+    public synchronized void removeTenant( String tenantId ) {
+        tenantMap.remove(tenantId);
+    }
+
+    /**
+     * queue a sentence of a tenant for scoring
+     * @param tenantId the id of the tenant
+     * @param sentence the text of the sentence
+     * @return the score, when done - completed exceptionally if the parser fails or the
+     * tenant has too many requests waiting (RejectedExecutionException)
+     */
+    public CompletableFuture<VScore> submit( String tenantId, String sentence ) {
+        CompletableFuture<VScore> future = new CompletableFuture<>();
+        synchronized ( this ) {
+            if ( threadList.isEmpty() || closed ) {
+                throw new IllegalStateException("scheduler not running");
+            }
+            TenantQueue tenant = tenantMap.get(tenantId);
+            if ( tenant == null ) {
+                throw new IllegalArgumentException("unknown tenant " + tenantId);
+            }
+            if ( tenant.requestQueue.size() >= maxQueued ) {
+                future.completeExceptionally(new RejectedExecutionException("tenant " + tenantId +
+                        " has " + maxQueued + " requests waiting"));
+                return future;
+            }
+            Request request = new Request();
+            request.sentence = sentence != null ? sentence : "";
+            request.future = future;
+            tenant.requestQueue.add(request);
+            if ( !tenant.active ) {
+                tenant.active = true;
+                activeQueue.add(tenant);
+            }
+            notify();
+        }
+        return future;
+    }
+
+    /**
+     * score all queued requests and stop the threads
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public void close() throws InterruptedException {
+        synchronized ( this ) {
+            closed = true;
+            notifyAll();
+        }
+        for ( Thread thread : threadList ) {
+            thread.join();
+        }
+    }
+
+    /**
+     * @return the number of requests waiting, keyed on tenant id
+     */
+    public synchronized Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new TreeMap<>();
+        for ( TenantQueue tenant : activeQueue ) {
+            depths.put(tenant.tenantId, tenant.requestQueue.size());
+        }
+        return depths;
+    }
+
+    private void run( VaderNLP nlp ) {
+        while ( true ) {
+            Request request;
+            Vader vader;
+            synchronized ( this ) {
+                TenantQueue tenant;
+                while ( (tenant = activeQueue.peek()) == null ) {
+                    if ( closed ) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch ( InterruptedException ex ) {
+                        logger.error("tenant scheduler thread interrupted");
+                        return;
+                    }
+                }
+                // deficit round robin: the tenant at the front is granted a quantum at the start of its
+                // turn, and runs requests while its credit covers them - then goes to the back of the line
+                if ( !tenant.inTurn ) {
+                    tenant.inTurn = true;
+                    tenant.deficit += quantum;
+                }
+                if ( tenant.deficit < tenant.requestQueue.peek().cost() ) {
+                    tenant.inTurn = false;
+                    activeQueue.add(activeQueue.poll());
+                    continue;
+                }
+                request = tenant.requestQueue.poll();
+                tenant.deficit -= request.cost();
+                vader = tenant.vader;
+                if ( tenant.requestQueue.isEmpty() ) {
+                    // an idle tenant doesn't save up credit
+                    tenant.active = false;
+                    tenant.inTurn = false;
+                    tenant.deficit = 0;
+                    activeQueue.poll();
+                }
+            }
+            try {
+                request.future.complete(vader.analyseSentence(request.sentence, nlp));
+            } catch ( Exception ex ) {
+                request.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    public int getQuantum() {
+        return quantum;
+    }
+
+    public void setQuantum(int quantum) {
+        this.quantum = Math.max(1, quantum);
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = Math.max(1, maxQueued);
+    }
+
+    /**
+     * the queue and round robin state of a tenant
+     */
+    private static class TenantQueue {
+        final String tenantId;
+        Vader vader;
+        final ArrayDeque<Request> requestQueue = new ArrayDeque<>();
+        long deficit; // the characters of work the tenant may still run
+        boolean inTurn; // at the front of activeQueue, and granted its quantum
+        boolean active; // in activeQueue
+
+        TenantQueue( String tenantId, Vader vader ) {
+            this.tenantId = tenantId;
+            this.vader = vader;
+        }
+    }
+
+    /**
+     * a sentence waiting to be scored
+     */
+    private static class Request {
+        String sentence;
+        CompletableFuture<VScore> future;
+
+        // the cost of a request in the round robin, its length (at least 1)
+        int cost() {
+            return Math.max(1, sentence.length());
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * an on-disk inverted index from words to the ids of the sentences they occur in,
+ * written by a TermIndexWriter while scoring a corpus
+ *
+ * the score and postings sections are memory-mapped and read in place, only the
+ * term dictionary is loaded on open.
+ *
+ */
+public class TermIndex {
+
+    static final int HEADER_SIZE = 4 + 4 + 8 * 5;
+    static final int SCORE_ROW_SIZE = 8 + 4 * 8;
+
+    private final long sentenceCount;
+    private final MappedByteBuffer scores;
+    private final MappedByteBuffer postings;
+
+    // term -> { offset into postings, number of ids }
+    private final Map<String, long[]> termMap = new HashMap<>();
+
+    private TermIndex( long sentenceCount, MappedByteBuffer scores, MappedByteBuffer postings ) {
+        this.sentenceCount = sentenceCount;
+        this.scores = scores;
+        this.postings = postings;
+    }
+
+    /**
+     * open an index written by TermIndexWriter
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file can't be read or isn't an index
+     */
+    public static TermIndex open( File file ) throws IOException {
+        try ( RandomAccessFile raf = new RandomAccessFile(file, "r");
+              FileChannel channel = raf.getChannel() ) {
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if ( header.getInt() != TermIndexWriter.MAGIC ) {
+                throw new IOException("not a term index: " + file);
+            }
+            if ( header.getInt() != TermIndexWriter.VERSION ) {
+                throw new IOException("unsupported term index version: " + file);
+            }
+            long sentenceCount = header.getLong();
+            long termCount = header.getLong();
+            long scoresOffset = header.getLong();
+            long postingsOffset = header.getLong();
+            long termsOffset = header.getLong();
+
+            TermIndex index = new TermIndex(sentenceCount,
+                    channel.map(FileChannel.MapMode.READ_ONLY, scoresOffset, postingsOffset - scoresOffset),
+                    channel.map(FileChannel.MapMode.READ_ONLY, postingsOffset, termsOffset - postingsOffset));
+
+            raf.seek(termsOffset);
+            try ( DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16)) ) {
+                for ( long i = 0; i < termCount; i++ ) {
+                    String term = in.readUTF();
+                    long offset = in.readLong();
+                    int count = in.readInt();
+                    index.termMap.put(term, new long[] {offset, count});
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @return the number of sentences in the index
+     */
+    public long getSentenceCount() {
+        return sentenceCount;
+    }
+
+    /**
+     * @return the number of distinct words in the index
+     */
+    public int getTermCount() {
+        return termMap.size();
+    }
+
+    /**
+     * get the sentences a word occurs in
+     * @param term the word (lower-case)
+     * @return the sorted ids of the sentences containing the word
+     */
+    public long[] getSentenceIds( String term ) {
+        long[] entry = termMap.get(term);
+        if ( entry == null ) {
+            return new long[0];
+        }
+        long[] idArray = new long[(int)entry[1]];
+        int position = (int)entry[0];
+        long id = 0;
+        for ( int i = 0; i < idArray.length; i++ ) {
+            // read a variable length delta
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = postings.get(position++);
+                delta = delta | ((long)(b & 0x7f) << shift);
+                shift += 7;
+            } while ( (b & 0x80) != 0 );
+            id = id + delta;
+            idArray[i] = id;
+        }
+        return idArray;
+    }
+
+    /**
+     * get the sentences that contain all of a set of words
+     * @param termList the words (lower-case)
+     * @return the sorted ids of the sentences containing every word
+     */
+    public long[] getSentenceIdsWithAll( Collection<String> termList ) {
+        long[] result = null;
+        for ( String term : termList ) {
+            long[] idArray = getSentenceIds(term);
+            if ( result == null ) {
+                result = idArray;
+            } else {
+                // intersect the two sorted lists
+                long[] both = new long[Math.min(result.length, idArray.length)];
+                int size = 0;
+                int i = 0;
+                int j = 0;
+                while ( i < result.length && j < idArray.length ) {
+                    if ( result[i] < idArray[j] ) {
+                        i++;
+                    } else if ( result[i] > idArray[j] ) {
+                        j++;
+                    } else {
+                        both[size++] = result[i];
+                        i++;
+                        j++;
+                    }
+                }
+                result = Arrays.copyOf(both, size);
+            }
+            if ( result.length == 0 ) {
+                break;
+            }
+        }
+        return result != null ? result : new long[0];
+    }
+
+    /**
+     * get the score a sentence had when it was indexed
+     * @param sentenceId the id of the sentence
+     * @return its score, or null if the sentence isn't in the index
+     */
+    public VScore getScore( long sentenceId ) {
+        long low = 0;
+        long high = sentenceCount - 1;
+        while ( low <= high ) {
+            long mid = (low + high) >>> 1;
+            int position = (int)(mid * SCORE_ROW_SIZE);
+            long id = scores.getLong(position);
+            if ( id < sentenceId ) {
+                low = mid + 1;
+            } else if ( id > sentenceId ) {
+                high = mid - 1;
+            } else {
+                return new VScore(scores.getDouble(position + 8), scores.getDouble(position + 16),
+                        scores.getDouble(position + 24), scores.getDouble(position + 32));
+            }
+        }
+        return null;
+    }
+
+}
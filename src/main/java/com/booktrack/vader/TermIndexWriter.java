@@ -0,0 +1,216 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * builds a TermIndex while sentences are being scored
+ *
+ * every word Vader looks at (the lower-cased tokens longer than one character, and emoji)
+ * is indexed, not just the current lexicon and booster words - a word added to the lexicon
+ * later must still find the sentences it occurs in.  the score of each sentence is kept
+ * alongside, so that a rescore after a lexicon change can report how the scores moved.
+ * a sentence scored without being parsed (see Vader.prescreen) is tokenized for the index.
+ *
+ */
+public class TermIndexWriter {
+
+    static final int MAGIC = 0x56544958; // "VTIX"
+    static final int VERSION = 1;
+
+    // term -> ids of the sentences it occurs in
+    private final Map<String, Postings> postingsMap = new HashMap<>();
+
+    // sentence id and its four score values, in the order added
+    private long[] idArray = new long[1024];
+    private double[] scoreArray = new double[1024 * 4];
+    private int sentenceCount = 0;
+
+    private final Set<String> termSet = new HashSet<>(); // re-used per sentence
+
+    public TermIndexWriter() {
+    }
+
+    /**
+     * add a scored sentence to the index
+     * @param sentenceId the unique id of the sentence in the caller's store
+     * @param text the text of the sentence
+     * @param sentence the tokens of the sentence, or null if it wasn't parsed
+     * @param score the score vader gave it
+     * @param vaderNLP the parser to tokenize the text with if there are no tokens
+     * @throws IOException if the parser fails
+     */
+    public void add( long sentenceId, String text, List<Token> sentence, VScore score, VaderNLP vaderNLP ) throws IOException {
+        if ( sentence == null && text != null ) {
+            sentence = vaderNLP.toSentence(vaderNLP.getTokens(text), null);
+        }
+        add(sentenceId, sentence, score);
+    }
+
+    /**
+     * add a scored sentence to the index
+     * @param sentenceId the unique id of the sentence in the caller's store
+     * @param sentence the tokens of the sentence
+     * @param score the score vader gave it
+     */
+    public void add( long sentenceId, List<Token> sentence, VScore score ) {
+        if ( sentence == null ) {
+            throw new IllegalArgumentException("sentence " + sentenceId + " has no tokens to index");
+        }
+        if ( sentenceCount == idArray.length ) {
+            idArray = Arrays.copyOf(idArray, sentenceCount * 2);
+            scoreArray = Arrays.copyOf(scoreArray, sentenceCount * 2 * 4);
+        }
+        idArray[sentenceCount] = sentenceId;
+        scoreArray[sentenceCount * 4] = score.getPositive();
+        scoreArray[sentenceCount * 4 + 1] = score.getNeutral();
+        scoreArray[sentenceCount * 4 + 2] = score.getNegative();
+        scoreArray[sentenceCount * 4 + 3] = score.getCompound();
+        sentenceCount++;
+
+        termSet.clear();
+        for ( Token token : sentence ) {
+            if ( token.getValue().length() > 1 || token.isEmoji() ) {
+                termSet.add(token.getValue().toLowerCase());
+            }
+        }
+        for ( String term : termSet ) {
+            Postings postings = postingsMap.get(term);
+            if ( postings == null ) {
+                postings = new Postings();
+                postingsMap.put(term, postings);
+            }
+            postings.add(sentenceId);
+        }
+    }
+
+    /**
+     * @return the number of sentences added so far
+     */
+    public int size() {
+        return sentenceCount;
+    }
+
+    /**
+     * write the index to file
+     *
+     * layout: header | scores (id + 4 doubles per sentence, by id) | postings (delta varints) | terms
+     *
+     * @param file the file to write
+     * @throws IOException if the write fails
+     */
+    public void write( File file ) throws IOException {
+
+        // the score rows sorted by id, so they can be binary searched
+        Integer[] order = new Integer[sentenceCount];
+        for ( int i = 0; i < sentenceCount; i++ ) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(idArray[a], idArray[b]));
+
+        List<String> termList = new ArrayList<>(postingsMap.keySet());
+        Collections.sort(termList);
+
+        try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) ) {
+            long scoresOffset = TermIndex.HEADER_SIZE;
+            long postingsOffset = scoresOffset + (long)sentenceCount * TermIndex.SCORE_ROW_SIZE;
+
+            // the postings, remembering where each term's list starts
+            ByteArrayOutputStream postingsBytes = new ByteArrayOutputStream();
+            long[] termOffset = new long[termList.size()];
+            for ( int i = 0; i < termList.size(); i++ ) {
+                termOffset[i] = postingsBytes.size();
+                postingsMap.get(termList.get(i)).write(postingsBytes);
+            }
+            long termsOffset = postingsOffset + postingsBytes.size();
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sentenceCount);
+            out.writeLong(termList.size());
+            out.writeLong(scoresOffset);
+            out.writeLong(postingsOffset);
+            out.writeLong(termsOffset);
+
+            for ( int index : order ) {
+                out.writeLong(idArray[index]);
+                for ( int j = 0; j < 4; j++ ) {
+                    out.writeDouble(scoreArray[index * 4 + j]);
+                }
+            }
+
+            postingsBytes.writeTo(out);
+
+            for ( int i = 0; i < termList.size(); i++ ) {
+                out.writeUTF(termList.get(i));
+                out.writeLong(termOffset[i]);
+                out.writeInt(postingsMap.get(termList.get(i)).size);
+            }
+        }
+    }
+
+    /**
+     * write a value as an unsigned variable length integer, 7 bits per byte
+     */
+    static void writeVarLong( OutputStream out, long value ) throws IOException {
+        while ( (value & ~0x7fL) != 0 ) {
+            out.write((int)((value & 0x7f) | 0x80));
+            value = value >>> 7;
+        }
+        out.write((int)value);
+    }
+
+    /**
+     * the sentence ids of a single term
+     */
+    private static class Postings {
+
+        long[] idArray = new long[4];
+        int size = 0;
+
+        void add( long id ) {
+            if ( size == idArray.length ) {
+                idArray = Arrays.copyOf(idArray, size * 2);
+            }
+            idArray[size++] = id;
+        }
+
+        /**
+         * write the ids sorted and delta encoded
+         */
+        void write( OutputStream out ) throws IOException {
+            Arrays.sort(idArray, 0, size);
+            long previous = 0;
+            for ( int i = 0; i < size; i++ ) {
+                writeVarLong(out, idArray[i] - previous);
+                previous = idArray[i];
+            }
+        }
+    }
+
+}
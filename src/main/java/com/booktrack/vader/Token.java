@@ -38,6 +38,7 @@ public class Token {
     private String value; // the value of the token
     private String posTag; // the part of speech tag (POS) of this item of text
     private double wordScore; // the vader individual word score
+    private boolean emoji; // an emoticon or emoji found by the EmojiTable, with the lexicon's spelling
 
     public Token() {
     }
@@ -94,6 +95,14 @@ public class Token {
         this.wordScore = wordScore;
     }
 
+    public boolean isEmoji() {
+        return emoji;
+    }
+
+    public void setEmoji(boolean emoji) {
+        this.emoji = emoji;
+    }
+
 }
 
 
@@ -31,7 +31,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Created by Rock de Vocht on 18/03/16 for Booktrack.com
@@ -47,15 +49,15 @@ public class Vader {
     private static final double B_INCR = 0.293;
     private static final double B_DECR = -0.293;
 
-    // alhpa normalization value
-    private static final double ALPHA = 15.0;
-
     // empirically derived mean sentiment intensity rating increase for using ALLCAPs to emphasize a word
     private static final double c_INCR = 0.733;
 
     // the maximum number of words in an idiom
     private static final int idiomMaxSize = 5;
 
+    // lexicons with more terms than this aren't pre-screened, the filter would outgrow the lexicon
+    private static final long MAX_FILTER_TERMS = 200000;
+
     // negations of mood
     private static final String[] NEGATE = new String[] {
             "aint", "arent", "cannot", "cant", "couldnt", "darent", "didnt", "doesnt",
@@ -93,258 +95,402 @@ public class Vader {
     private static final Map<String, Double> boosterMap = new HashMap<>();
 
     // check for special case idioms using a sentiment-laden keyword known to SAGE
-    private static final Map<String, Double> idiomMap = new HashMap<>();
+    private Map<String, Double> idiomMap = new HashMap<>();
 
-    // set of vectors keyed on word + tag e {n,v,a}
-    private Map<String, Double> moodSet;
+    // the word (and phrase) valences
+    private Lexicon lexicon;
     private HashSet<String> negatedSet;
 
+    // pre-screen for text without any word of the lexicon
+    private LexiconFilter lexiconFilter;
+
+    // a tenant's pre-screen for the words it adds to the (shared) lexicon filter's
+    private LexiconFilter overlayFilter;
+
+    // the sentence rules of analyseSentences()
+    private SentenceAggregator aggregator = SentenceAggregator.getInstance();
+
     public Vader() {
     }
 
+    /**
+     * parse and analyse a single sentence of raw text, skipping the nlp parse altogether
+     * if the sentence can't contain any sentiment word
+     * @param sentenceText the text of the sentence (as returned by the sentence detector)
+     * @param vaderNLP the nlp parser to use if the sentence does need scoring
+     * @return the vader score
+     * @throws IOException if the parser fails
+     */
+    public VScore analyseSentence( String sentenceText, VaderNLP vaderNLP ) throws IOException {
+        VScore score = prescreen(sentenceText);
+        if ( score != null ) {
+            return score;
+        }
+        return analyseSentence(vaderNLP.parseSentence(sentenceText));
+    }
+
+    /**
+     * the score of a sentence of raw text, if it can be told without parsing the sentence:
+     * it can't contain any sentiment word, and LexiconFilter.neutralScore() can tell its words
+     * @param sentenceText the text of the sentence
+     * @return its score, or null if the sentence has to be parsed and analysed
+     */
+    public VScore prescreen( String sentenceText ) {
+        return mayContainSentiment(sentenceText) ? null : LexiconFilter.neutralScore(sentenceText);
+    }
+
+    /**
+     * check raw text for possible sentiment words - a sentence (or document) for which
+     * this returns false scores neutral, and doesn't need to be parsed or analysed
+     * @param text the text to check
+     * @return false if the text definitely has no words in the lexicon
+     */
+    public boolean mayContainSentiment( String text ) {
+        return lexiconFilter == null || lexiconFilter.mayContain(text) ||
+                (overlayFilter != null && overlayFilter.mayContain(text));
+    }
+
     /**
      * Analyse a sentence using Vader's algorithm and return a score for that sentence
      * @param sentence the sentence to analyse
      * @return the vader score
      */
     public VScore analyseSentence( List<Token> sentence ) {
-        if ( sentence != null ) {
+        return analyseSentence(sentence, null);
+    }
 
-            boolean isCapsDifferential = isAllCAPDifferential(sentence);
-            List<Double> sentiments = new ArrayList<>();
-            int i = 0;
+    /**
+     * Analyse a sentence and record every rule that changed a score into a trace
+     * @param sentence the sentence to analyse
+     * @param trace the trace to fill (reset first), or null to not explain
+     * @return the vader score
+     */
+    public VScore analyseSentence( List<Token> sentence, ExplainTrace trace ) {
+        if ( sentence != null ) {
             List<Token> snt = filterPunctuation(sentence);
-            for ( Token item : snt ) {
-
-                double v = 0.0;
-                String itemLowercase = item.getValue().toLowerCase();
-
-                // skip "kind of" and any value already in the booster dictionary
-                if ( ((i + 1) < snt.size() && itemLowercase.equals("kind") && wordInSentenceEquals(snt, i+1, "of")) ||
-                        boosterMap.containsKey(itemLowercase) ) {
-                    sentiments.add(v);
-                    i++; // next index
-                    continue;
-                }
-
-                if ( moodSet.containsKey(itemLowercase) ) {
+            double[] sentiments = new double[snt.size()];
+            scoreWords(sentence, snt, sentiments, 0, trace);
+            double[] score = new double[4];
+            SentenceAggregator.aggregate(sentiments, 0, sentiments.length, butIndex(sentence),
+                    count(sentence, "!"), count(sentence, "?"), score, trace);
+            return new VScore(score[0], score[1], score[2], score[3]);
+        } // if sentence != null
 
-                    // get sentiment value
-                    v = moodSet.get(itemLowercase);
+        return new VScore(); // empty score
+    }
 
-                    // check if sentiment laden word is in ALLCAPS (while others aren't)
-                    if ( isCapsDifferential && isUpper(item.getValue()) ) {
-                        if ( v > 0.0 ) {
-                            v = v + c_INCR;
-                        } else {
-                            v = v - c_INCR;
-                        }
-                    }
+    /**
+     * analyse many sentences - the word rules one sentence at a time, then the sentence
+     * rules over all of them at once (with the Vector API where the JVM can run it)
+     * @param sentenceList the sentences to analyse (a null sentence scores empty)
+     * @return the vader score of each sentence
+     */
+    public VScore[] analyseSentences( List<List<Token>> sentenceList ) {
+        SentenceBatch batch = new SentenceBatch(sentenceList.size());
+        for ( List<Token> sentence : sentenceList ) {
+            addSentence(sentence, batch);
+        }
+        aggregator.aggregate(batch);
+        VScore[] scoreList = new VScore[batch.size()];
+        for ( int i = 0; i < scoreList.length; i++ ) {
+            scoreList[i] = batch.getScore(i);
+        }
+        return scoreList;
+    }
 
-                    double nScalar = -0.74; // negative scalar
+    /**
+     * parse and analyse many sentences of raw text, skipping the nlp parse of any sentence
+     * that can't contain a sentiment word
+     * @param sentenceTextList the text of the sentences (as returned by the sentence detector)
+     * @param vaderNLP the nlp parser to use for the sentences that need scoring
+     * @return the vader score of each sentence
+     * @throws IOException if the parser fails
+     */
+    public VScore[] analyseSentences( String[] sentenceTextList, VaderNLP vaderNLP ) throws IOException {
+        VScore[] scoreList = new VScore[sentenceTextList.length];
+        List<List<Token>> sentenceList = new ArrayList<>(sentenceTextList.length);
+        for ( int i = 0; i < sentenceTextList.length; i++ ) {
+            scoreList[i] = prescreen(sentenceTextList[i]);
+            if ( scoreList[i] == null ) {
+                sentenceList.add(vaderNLP.parseSentence(sentenceTextList[i]));
+            }
+        }
+        VScore[] parsedScoreList = analyseSentences(sentenceList);
+        for ( int i = 0, j = 0; i < scoreList.length; i++ ) {
+            if ( scoreList[i] == null ) {
+                scoreList[i] = parsedScoreList[j++];
+            }
+        }
+        return scoreList;
+    }
 
-                    if ( i > 0 && !moodSetContainsSentenceIndex(snt,i-1) ) {
-                        double s1 = scalarIncDec(snt.get(i-1).getValue(), v, isCapsDifferential);
-                        v = v + s1;
+    /**
+     * run the word rules of a sentence and add its word scores to a batch, to be scored
+     * by SentenceAggregator.aggregate() together with the rest of the batch
+     * @param sentence the sentence to analyse (null for an empty sentence)
+     * @param batch the batch to add it to
+     */
+    public void addSentence( List<Token> sentence, SentenceBatch batch ) {
+        if ( sentence == null ) {
+            batch.add(0, -1, 0, 0);
+            return;
+        }
+        List<Token> snt = filterPunctuation(sentence);
+        int offset = batch.add(snt.size(), butIndex(sentence), count(sentence, "!"), count(sentence, "?"));
+        scoreWords(sentence, snt, batch.scoreArray, offset, null);
+    }
 
-                    }
+    /**
+     * the word rules of the vader algorithm: the valence of every word of a sentence
+     * @param sentence the sentence
+     * @param snt the sentence without punctuation
+     * @param sentiments set to the valence of each word of snt
+     * @param offset the index in sentiments of the first word
+     * @param trace the trace to fill (reset first), or null
+     */
+    private void scoreWords( List<Token> sentence, List<Token> snt, double[] sentiments, int offset, ExplainTrace trace ) {
+
+        boolean isCapsDifferential = isAllCAPDifferential(sentence);
+        int[] original = trace != null ? trace.begin(sentence, snt) : null; // word -> sentence index
+        double[] phraseValence = lexicon.getMaxPhraseLength() > 1 ? new double[1] : null;
+        int[] phraseEnd = new int[1]; // the words of a matched phrase are scored by its first word
+        for ( int i = 0; i < snt.size(); i++ ) {
+            sentiments[offset + i] = scoreWord(snt, i, isCapsDifferential, phraseEnd, phraseValence, trace, original);
+        }
 
-                    if ( i > 1 && !moodSetContainsSentenceIndex(snt,i-2) ) {
+        // set the sentiment on the tokens
+        for ( int j = 0; j < snt.size(); j++ ) {
+            snt.get(j).setWordScore( sentiments[offset + j] );
+        }
+    }
 
-                        double s2 = scalarIncDec(snt.get(i-2).getValue(), v, isCapsDifferential);
-                        v = v + (s2 * 0.95);
+    /**
+     * @return the most words, from a word on, that scoreWord() looks at to score the word
+     */
+    int getLookAhead() {
+        return Math.max(idiomMaxSize, lexicon.getMaxPhraseLength());
+    }
 
-                        // check for special use of 'never' as valence modifier instead of negation
-                        if ( wordInSentenceEquals(snt,i-2,"never") && (wordInSentenceEquals(snt,i-1,"so") || wordInSentenceEquals(snt,i-1,"this")) ) {
+    /**
+     * the word rules of the vader algorithm for one word of a sentence, which depend on the
+     * (up to 3) words before it and the (up to 4, or the longest phrase) words after it
+     * @param snt the sentence without punctuation
+     * @param i the index of the word in snt
+     * @param isCapsDifferential true if some, but not all, words of the sentence are in ALLCAPS
+     * @param phraseEnd the end of the phrase matched by an earlier word (its words score 0), updated
+     * @param phraseValence scratch space for a phrase's valence, null if the lexicon has no phrases
+     * @param trace the trace to record the rules applied in, or null
+     * @param original the sentence index of each word of snt if tracing
+     * @return the valence of the word
+     */
+    double scoreWord( List<Token> snt, int i, boolean isCapsDifferential, int[] phraseEnd, double[] phraseValence,
+                      ExplainTrace trace, int[] original ) {
 
-                            v = v * 1.5;
+        double v = 0.0;
+        if ( i < phraseEnd[0] ) {
+            return v;
+        }
+        Token item = snt.get(i);
+
+        String itemLowercase = item.isEmoji() ? item.getValue() : item.getValue().toLowerCase();
+
+        // a phrase of the lexicon starting here wins over its single words
+        double valence = Double.NaN;
+        if ( phraseValence != null ) {
+            int phraseLength = lexicon.matchPhrase(snt, i, phraseValence);
+            if ( phraseLength > 1 ) {
+                valence = phraseValence[0];
+                phraseEnd[0] = i + phraseLength;
+                if ( trace != null ) {
+                    trace.record(original[i], ExplainTrace.Rule.PHRASE, -1, 0.0, valence);
+                }
+            }
+        }
 
-                        } else if ( negated(snt,i-2) ) { //  otherwise, check for negation/nullification
+        if ( Double.isNaN(valence) ) {
+            // skip "kind of" and any value already in the booster dictionary
+            if ( ((i + 1) < snt.size() && itemLowercase.equals("kind") && wordInSentenceEquals(snt, i+1, "of")) ||
+                    boosterMap.containsKey(itemLowercase) ) {
+                return v;
+            }
+            valence = lexicon.getValence(itemLowercase);
+            if ( trace != null && !Double.isNaN(valence) ) {
+                trace.record(original[i], ExplainTrace.Rule.VALENCE, -1, 0.0, valence);
+            }
+        }
 
-                            v = v * nScalar;
+        if ( !Double.isNaN(valence) ) {
 
-                        }
-                    }
+            // get sentiment value
+            v = valence;
+            double before;
 
-                    if ( i > 2 && !moodSetContainsSentenceIndex(snt, i-3) ) {
+            // check if sentiment laden word is in ALLCAPS (while others aren't)
+            if ( isCapsDifferential && !item.isEmoji() && isUpper(item.getValue()) ) {
+                before = v;
+                if ( v > 0.0 ) {
+                    v = v + c_INCR;
+                } else {
+                    v = v - c_INCR;
+                }
+                if ( trace != null ) {
+                    trace.record(original[i], ExplainTrace.Rule.CAPS, -1, before, v);
+                }
+            }
 
-                        double s3 = scalarIncDec(snt.get(i-3).getValue(), v, isCapsDifferential);
-                        v = v + (s3 * 0.9);
+            double nScalar = -0.74; // negative scalar
 
-                        // check for special use of 'never' as valence modifier instead of negation
-                        if ( wordInSentenceEquals(snt,i-3,"never") &&
-                                ( (wordInSentenceEquals(snt,i-2,"so") || wordInSentenceEquals(snt,i-2,"this")) ||
-                                        (wordInSentenceEquals(snt,i-1,"so") || wordInSentenceEquals(snt,i-1,"this")) ) ) {
-                            v = v * 1.25;
-                        } else if ( negated(snt, i-3) ) {
+            if ( i > 0 && !lexiconContainsSentenceIndex(snt,i-1) ) {
+                double s1 = scalarIncDec(snt.get(i-1).getValue(), v, isCapsDifferential);
+                before = v;
+                v = v + s1;
+                if ( trace != null && s1 != 0.0 ) {
+                    trace.record(original[i], ExplainTrace.Rule.BOOSTER, original[i-1], before, v);
+                }
 
-                            v = v * nScalar;
+            }
 
-                        }
+            if ( i > 1 && !lexiconContainsSentenceIndex(snt,i-2) ) {
 
-                        // test the special case idioms
-                        StringBuilder idiom = new StringBuilder();
-                        for ( int index = 0; index < idiomMaxSize && index < snt.size(); index++ ) {
-                            idiom.append(getLcaseWordAt(snt, index + i));
-                            String idiomStr = idiom.toString();
-                            if ( idiomMap.containsKey(idiomStr) ) {
-                                v = idiomMap.get(idiomStr);
-                            }
-                            if ( boosterMap.containsKey(idiomStr) ) {
-                                v = v + B_DECR;
-                            }
-                            idiom.append(" ");
-                        }
+                double s2 = scalarIncDec(snt.get(i-2).getValue(), v, isCapsDifferential);
+                before = v;
+                v = v + (s2 * 0.95);
+                if ( trace != null && s2 != 0.0 ) {
+                    trace.record(original[i], ExplainTrace.Rule.BOOSTER, original[i-2], before, v);
+                }
 
-                    }
+                // check for special use of 'never' as valence modifier instead of negation
+                before = v;
+                if ( wordInSentenceEquals(snt,i-2,"never") && (wordInSentenceEquals(snt,i-1,"so") || wordInSentenceEquals(snt,i-1,"this")) ) {
 
-                    // check for negation case using "least"
-                    if ( i > 1 && !moodSetContainsSentenceIndex(snt, i-1) &&
-                            wordInSentenceEquals(snt, i-1, "least") ) {
-                        if ( !wordInSentenceEquals(snt,i-2,"at") && !wordInSentenceEquals(snt,i-2,"very") ) {
-                            v = v * nScalar;
-                        }
-                    } else if ( i > 0 && !moodSetContainsSentenceIndex(snt, i-1) &&
-                            wordInSentenceEquals(snt, i-1, "least") ) {
-                        v = v * nScalar;
+                    v = v * 1.5;
+                    if ( trace != null ) {
+                        trace.record(original[i], ExplainTrace.Rule.NEVER_SO, original[i-2], before, v);
                     }
 
-                } // if moodSet contains word
+                } else if ( negated(snt,i-2) ) { //  otherwise, check for negation/nullification
 
-                sentiments.add(v);
-                i++; // next index
-
-            } // for each item in snt
+                    v = v * nScalar;
+                    if ( trace != null ) {
+                        trace.record(original[i], ExplainTrace.Rule.NEGATION, original[i-2], before, v);
+                    }
 
-            // set the sentiment on the tokens
-            if ( snt.size() == sentiments.size() ) {
-                for ( int j = 0; j < snt.size(); j++ ) {
-                    snt.get(j).setWordScore( sentiments.get(j) );
                 }
             }
 
-            // find but in the sentence
-            int butIndex = -1;
-            for ( int j = 0; j < sentence.size(); j++ ) {
-                Token t = sentence.get(j);
-                if ( t.getValue().equals("but") || t.getValue().equals("BUT")) {
-                    butIndex = j;
-                    break;
+            if ( i > 2 && !lexiconContainsSentenceIndex(snt, i-3) ) {
+
+                double s3 = scalarIncDec(snt.get(i-3).getValue(), v, isCapsDifferential);
+                before = v;
+                v = v + (s3 * 0.9);
+                if ( trace != null && s3 != 0.0 ) {
+                    trace.record(original[i], ExplainTrace.Rule.BOOSTER, original[i-3], before, v);
                 }
-            }
-            if ( butIndex >= 0 ) {
-                List<Double> newSentiments = new ArrayList<>();
-                for ( int j = 0; j < sentiments.size(); j++ ) {
-                    if ( j < butIndex ) {
-                        newSentiments.add( sentiments.get(j) * 0.5);
-                    } else if ( j > butIndex ) {
-                        newSentiments.add( sentiments.get(j) * 1.5);
-                    } else {
-                        newSentiments.add( sentiments.get(j) );
+
+                // check for special use of 'never' as valence modifier instead of negation
+                before = v;
+                if ( wordInSentenceEquals(snt,i-3,"never") &&
+                        ( (wordInSentenceEquals(snt,i-2,"so") || wordInSentenceEquals(snt,i-2,"this")) ||
+                                (wordInSentenceEquals(snt,i-1,"so") || wordInSentenceEquals(snt,i-1,"this")) ) ) {
+                    v = v * 1.25;
+                    if ( trace != null ) {
+                        trace.record(original[i], ExplainTrace.Rule.NEVER_SO, original[i-3], before, v);
                     }
-                }
-                sentiments = newSentiments;
-            }
+                } else if ( negated(snt, i-3) ) {
 
-            // do the sum of the total
-            double sum = 0.0;
-            for ( double value : sentiments ) {
-                sum = sum + value;
-            }
+                    v = v * nScalar;
+                    if ( trace != null ) {
+                        trace.record(original[i], ExplainTrace.Rule.NEGATION, original[i-3], before, v);
+                    }
 
-            // count the number of exclamation marks
-            int epCount = 0;
-            for ( Token t : sentence ) {
-                if ( t.getValue().equals("!") ) {
-                    epCount = epCount + 1;
                 }
-            }
-            if ( epCount > 4 ) {
-                epCount = 4;
-            }
-            double emAmplifier = (double)epCount * 0.292; // empirically derived mean sentiment intensity rating increase for exclamation points
-
-            if ( sum > 0.0 ) {
-                sum = sum + emAmplifier;
-            } else if ( sum < 0.0 ) {
-                sum = sum - emAmplifier;
-            }
 
-            // count the number of question marks
-            int qmCount = 0;
-            for ( Token t : sentence ) {
-                if ( t.getValue().equals("?") ) {
-                    qmCount = qmCount + 1;
+                // test the special case idioms
+                StringBuilder idiom = new StringBuilder();
+                for ( int index = 0; index < idiomMaxSize && index < snt.size(); index++ ) {
+                    idiom.append(getLcaseWordAt(snt, index + i));
+                    String idiomStr = idiom.toString();
+                    if ( idiomMap.containsKey(idiomStr) ) {
+                        before = v;
+                        v = idiomMap.get(idiomStr);
+                        if ( trace != null ) {
+                            trace.record(original[i], ExplainTrace.Rule.IDIOM, -1, before, v);
+                        }
+                    }
+                    if ( boosterMap.containsKey(idiomStr) ) {
+                        before = v;
+                        v = v + B_DECR;
+                        if ( trace != null ) {
+                            trace.record(original[i], ExplainTrace.Rule.IDIOM_BOOSTER, -1, before, v);
+                        }
+                    }
+                    idiom.append(" ");
                 }
+
             }
 
-            // check for added emphasis resulting from question marks (2 or 3+)
-            double qmAmplifier = 0.0;
-            if ( qmCount > 1 ) {
-                if ( qmCount <= 3 ) {
-                    qmAmplifier = (double)qmCount * 0.18;
-                } else {
-                    qmAmplifier = 0.96;
+            // check for negation case using "least"
+            before = v;
+            if ( i > 1 && !lexiconContainsSentenceIndex(snt, i-1) &&
+                    wordInSentenceEquals(snt, i-1, "least") ) {
+                if ( !wordInSentenceEquals(snt,i-2,"at") && !wordInSentenceEquals(snt,i-2,"very") ) {
+                    v = v * nScalar;
+                    if ( trace != null ) {
+                        trace.record(original[i], ExplainTrace.Rule.LEAST, original[i-1], before, v);
+                    }
                 }
-                if ( sum > 0.0 ) {
-                    sum = sum + qmAmplifier;
-                } else if ( sum < 0.0 ) {
-                    sum = sum - qmAmplifier;
+            } else if ( i > 0 && !lexiconContainsSentenceIndex(snt, i-1) &&
+                    wordInSentenceEquals(snt, i-1, "least") ) {
+                v = v * nScalar;
+                if ( trace != null ) {
+                    trace.record(original[i], ExplainTrace.Rule.LEAST, original[i-1], before, v);
                 }
             }
 
-            double compound = normalize(sum);
+        } // if the lexicon contains word
 
-            double posSum = 0.0;
-            double negSum = 0.0;
-            double neutralCount = 0.0;
-            for ( double sentimentScore : sentiments ) {
-                if ( sentimentScore > 0.0 ) {
-                    posSum = posSum + sentimentScore + 1.0; // compensates for neutral words that are counted as 1
-                }
-                if ( sentimentScore < 0.0 ) {
-                    negSum = negSum + sentimentScore - 1.0; // when used with math.fabs(), compensates for neutrals
-                }
-                if ( sentimentScore == 0.0 ) {
-                    neutralCount = neutralCount + 1;
-                }
-            }
+        return v;
+    }
 
-            // adjust amplifiers
-            if ( posSum > Math.abs(negSum) ) {
-                posSum = posSum + qmAmplifier + emAmplifier;
-            } else if ( posSum < Math.abs(negSum) ) {
-                negSum = negSum - (qmAmplifier + emAmplifier);
+    /**
+     * @param sentence a sentence
+     * @return the index of the first "but" in the sentence, punctuation included - -1 if none
+     */
+    private static int butIndex( List<Token> sentence ) {
+        for ( int j = 0; j < sentence.size(); j++ ) {
+            Token t = sentence.get(j);
+            if ( t.getValue().equals("but") || t.getValue().equals("BUT")) {
+                return j;
             }
+        }
+        return -1;
+    }
 
-            double total = posSum + Math.abs(negSum) + neutralCount;
-            if ( total > 0.0 ) { // make sure values are valid
-                posSum = Math.abs(posSum / total);
-                negSum = Math.abs(negSum / total);
-                neutralCount = Math.abs(neutralCount / total);
-            } else {
-                posSum = 0.0;
-                negSum = 0.0;
-                neutralCount = 0.0;
+    /**
+     * @param sentence a sentence
+     * @param mark a punctuation mark
+     * @return the number of times the mark is a token of the sentence
+     */
+    private static int count( List<Token> sentence, String mark ) {
+        int count = 0;
+        for ( Token t : sentence ) {
+            if ( t.getValue().equals(mark) ) {
+                count = count + 1;
             }
-
-            return new VScore(posSum, neutralCount, negSum, compound);
-
-        } // if sentence != null
-
-        return new VScore(); // empty score
+        }
+        return count;
     }
 
     /**
-     * check if the word in sentence @ index is in the moodSet or not
+     * check if the word in sentence @ index is in the lexicon or not
      * @param sentence the sentence to check
      * @param index the index
-     * @return true if the word is in the mood-set
+     * @return true if the word is in the lexicon
      */
-    private boolean moodSetContainsSentenceIndex( List<Token> sentence, int index ) {
+    private boolean lexiconContainsSentenceIndex( List<Token> sentence, int index ) {
         if ( index >= 0 && index < sentence.size() ) {
             Token t = sentence.get(index);
-            return moodSet.containsKey(t.getValue().toLowerCase());
+            return lexicon.contains(t.getValue().toLowerCase());
         }
         return false;
     }
@@ -383,25 +529,66 @@ public class Vader {
      * @throws IOException
      */
     public void init() throws IOException {
-
-        logger.debug("Vader: init lexicon(vader_sentiment_lexicon.txt)");
-        moodSet = new HashMap<>();
-        try ( InputStream vaderIn = getClass().getResourceAsStream("vader_sentiment_lexicon.txt") ) {
+        try ( InputStream vaderIn = getClass().getResourceAsStream("vader_sentiment_lexicon.txt");
+              InputStream vaderIdiomsIn = getClass().getResourceAsStream("vader_idioms.txt");
+              InputStream vaderEmojiIn = getClass().getResourceAsStream("vader_emoji.txt") ) {
             if (vaderIn == null) {
                 throw new IOException("vader_sentiment_lexicon.txt not found on class-path");
             }
-            String vaderLexicon = new String(IOUtils.toByteArray(vaderIn));
-            if (vaderLexicon.length() > 0) {
-                for (String line : vaderLexicon.split("\n")) {
-                    String[] items = line.split("\t");
-                    if (items.length > 2) {
-                        moodSet.put(items[0].trim(), Double.parseDouble(items[1].trim()));
-                    } else {
-                        logger.debug("skipping invalid Vader line: " + line);
-                    }
+            if (vaderIdiomsIn == null) {
+                throw new IOException("vader_idioms.txt not found on class-path");
+            }
+            if (vaderEmojiIn == null) {
+                throw new IOException("vader_emoji.txt not found on class-path");
+            }
+            init(vaderIn, vaderIdiomsIn, vaderEmojiIn);
+        }
+    }
+
+    /**
+     * load vader from a lexicon and idioms in the format of vader_sentiment_lexicon.txt
+     * and vader_idioms.txt, e.g. a domain specific copy of the lexicon
+     * @param vaderIn the lexicon
+     * @param vaderIdiomsIn the idioms
+     * @throws IOException
+     */
+    public void init( InputStream vaderIn, InputStream vaderIdiomsIn ) throws IOException {
+        init(vaderIn, vaderIdiomsIn, null);
+    }
+
+    /**
+     * load vader from a lexicon, idioms and emoji in the format of vader_sentiment_lexicon.txt,
+     * vader_idioms.txt and vader_emoji.txt
+     * @param vaderIn the lexicon
+     * @param vaderIdiomsIn the idioms
+     * @param vaderEmojiIn the emoji valences (utf-8), added to the lexicon - or null for none
+     * @throws IOException
+     */
+    public void init( InputStream vaderIn, InputStream vaderIdiomsIn, InputStream vaderEmojiIn ) throws IOException {
+
+        logger.debug("Vader: init lexicon(vader_sentiment_lexicon.txt)");
+        MapLexicon mapLexicon = new MapLexicon();
+        String vaderLexicon = new String(IOUtils.toByteArray(vaderIn));
+        if (vaderLexicon.length() > 0) {
+            for (String line : vaderLexicon.split("\n")) {
+                String[] items = line.split("\t");
+                if (items.length > 2) {
+                    mapLexicon.put(items[0].trim(), Double.parseDouble(items[1].trim()));
+                } else {
+                    logger.debug("skipping invalid Vader line: " + line);
+                }
+            }
+        }
+        if ( vaderEmojiIn != null ) {
+            logger.debug("Vader: init emoji(vader_emoji.txt)");
+            for ( String line : new String(IOUtils.toByteArray(vaderEmojiIn), StandardCharsets.UTF_8).split("\n") ) {
+                String[] items = line.split("\t");
+                if ( items.length > 1 ) {
+                    mapLexicon.put(items[0].trim(), Double.parseDouble(items[1].trim()));
                 }
             }
         }
+        setLexicon(mapLexicon);
 
         // setup booster dict
         for ( String incr : BoosterIncrementList) {
@@ -413,20 +600,17 @@ public class Vader {
 
         // add the special case idioms
         logger.debug("Vader: init idioms(vader_idioms.txt)");
-        try ( InputStream vaderIdiomsIn = getClass().getResourceAsStream("vader_idioms.txt") ) {
-            if (vaderIdiomsIn == null) {
-                throw new IOException("vader_idioms.txt not found on class-path");
-            }
-            String vaderIdiomContent = new String(IOUtils.toByteArray(vaderIdiomsIn));
-            if (vaderIdiomContent.length() > 0) {
-                for (String line : vaderIdiomContent.split("\n")) {
-                    String[] items = line.split(",");
-                    if ( items.length == 2 ) {
-                        idiomMap.put(items[0].trim(), Double.parseDouble(items[1].trim()));
-                    }
+        Map<String, Double> idioms = new HashMap<>(); // a new map, tenants may share the old one
+        String vaderIdiomContent = new String(IOUtils.toByteArray(vaderIdiomsIn));
+        if (vaderIdiomContent.length() > 0) {
+            for (String line : vaderIdiomContent.split("\n")) {
+                String[] items = line.split(",");
+                if ( items.length == 2 ) {
+                    idioms.put(items[0].trim(), Double.parseDouble(items[1].trim()));
                 }
             }
         }
+        idiomMap = idioms;
 
         negatedSet = new HashSet<>();
         for ( String str : NEGATE) {
@@ -434,6 +618,103 @@ public class Vader {
         }
     }
 
+    /**
+     * replace the lexicon loaded by init(), e.g. with a large domain FstLexicon - call after init()
+     * @param lexicon the word (and phrase) valences to score with
+     */
+    public void setLexicon( Lexicon lexicon ) {
+        this.lexicon = lexicon;
+        this.overlayFilter = null;
+        if ( lexicon.size() <= MAX_FILTER_TERMS ) {
+            lexiconFilter = new LexiconFilter(filterKeys(lexicon, lexicon::forEachTerm));
+            logger.debug("Vader: lexicon filter has " + lexiconFilter.size() + " states");
+        } else {
+            lexiconFilter = null;
+            logger.debug("Vader: lexicon of " + lexicon.size() + " terms, not pre-screened");
+        }
+    }
+
+    /**
+     * create a vader for a tenant, with its own valences and idioms on top of this vader's
+     *
+     * the tenant shares this vader's lexicon (through an OverlayLexicon), its lexicon filter and
+     * its idioms, and only keeps its own changes - so a tenant costs the memory of its changes.
+     * the tenant is independent of later setLexicon() / init() calls on this vader.
+     *
+     * @param valenceMap the tenant's changed terms (lower-case) and their valences, NaN removes a term
+     * @param extraIdiomMap the tenant's extra or changed idioms
+     * @return the tenant's vader, ready for use
+     */
+    public Vader forTenant( Map<String, Double> valenceMap, Map<String, Double> extraIdiomMap ) {
+        Vader tenant = new Vader();
+        tenant.negatedSet = negatedSet;
+        tenant.lexiconFilter = lexiconFilter;
+        tenant.overlayFilter = overlayFilter;
+        if ( valenceMap.isEmpty() ) {
+            tenant.lexicon = lexicon;
+        } else {
+            OverlayLexicon overlay = new OverlayLexicon(lexicon, valenceMap);
+            tenant.lexicon = overlay;
+            if ( lexiconFilter != null ) {
+                // the shared filter passes every word of the base, the words added by the tenant (and by
+                // this vader, if it is a tenant itself) need their own - removed words can still pass
+                List<String> keyList = new ArrayList<>();
+                for ( Lexicon layer = overlay; layer instanceof OverlayLexicon; layer = ((OverlayLexicon)layer).getBase() ) {
+                    keyList.addAll(filterKeys(overlay, ((OverlayLexicon)layer)::forEachAddedTerm));
+                }
+                tenant.overlayFilter = new LexiconFilter(keyList);
+            }
+        }
+        if ( extraIdiomMap.isEmpty() ) {
+            tenant.idiomMap = idiomMap;
+        } else {
+            tenant.idiomMap = new HashMap<>(idiomMap);
+            tenant.idiomMap.putAll(extraIdiomMap);
+        }
+        return tenant;
+    }
+
+    /**
+     * the keys of a lexicon filter for a set of terms - a phrase can only match where its first word does
+     * @param lexicon the lexicon the terms are from
+     * @param terms visits the terms
+     * @return the filter keys
+     */
+    private static List<String> filterKeys( Lexicon lexicon, Consumer<Consumer<String>> terms ) {
+        boolean matchesPhrases = lexicon.getMaxPhraseLength() > 1;
+        List<String> keyList = new ArrayList<>();
+        terms.accept(term -> {
+            int space = term.indexOf(' ');
+            keyList.add(matchesPhrases && space > 0 ? term.substring(0, space) : term);
+        });
+        return keyList;
+    }
+
+    /**
+     * @return the word (and phrase) valences
+     */
+    public Lexicon getLexicon() {
+        return lexicon;
+    }
+
+    public SentenceAggregator getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * @param aggregator the sentence rules of analyseSentences(), e.g. SentenceAggregator.getScalarInstance()
+     */
+    public void setAggregator( SentenceAggregator aggregator ) {
+        this.aggregator = aggregator;
+    }
+
+    /**
+     * @return the idiom valences (read-only)
+     */
+    Map<String, Double> getIdiomMap() {
+        return Collections.unmodifiableMap(idiomMap);
+    }
+
     /**
      * return true if the sentence has a negation in it
      * @param sentence the sentence to check
@@ -474,21 +755,12 @@ public class Vader {
         return false;
     }
 
-    /**
-     * normalize a score using an alpha magic value
-     * @param score the score to normalize
-     * @return the normalized score
-     */
-    private double normalize( double score ) {
-        return score / Math.sqrt( (score *score) + ALPHA );
-    }
-
     /**
      * return true if str does not contain any lower case characters a..z
      * @param str the string to check
      * @return true if there are no lower case characters in this string
      */
-    private boolean isUpper( String str ) {
+    static boolean isUpper( String str ) {
         if ( str != null ) {
             for ( char ch : str.toCharArray() ) {
                 if ( ch >= 'a' && ch <= 'z' ) {
@@ -509,13 +781,17 @@ public class Vader {
     private boolean isAllCAPDifferential( List<Token> sentence ) {
         if ( sentence != null ) {
             int countAllCaps = 0;
+            int countWords = 0; // emoticons and emoji have no case, and don't count
             for (Token t : sentence) {
-                if ( isUpper(t.getValue()) ) {
-                    countAllCaps = countAllCaps + 1;
+                if ( !t.isEmoji() ) {
+                    countWords = countWords + 1;
+                    if ( isUpper(t.getValue()) ) {
+                        countAllCaps = countAllCaps + 1;
+                    }
                 }
             }
-            int capsDifferential = sentence.size() - countAllCaps;
-            return capsDifferential > 0 && capsDifferential < sentence.size();
+            int capsDifferential = countWords - countAllCaps;
+            return capsDifferential > 0 && capsDifferential < countWords;
         }
         return false;
     }
@@ -559,7 +835,7 @@ public class Vader {
         if (sentence != null ) {
             List<Token> newSentence = new ArrayList<>();
             for ( Token t : sentence ) {
-                if ( t.getValue().length() > 1) {
+                if ( t.getValue().length() > 1 || t.isEmoji() ) {
                     newSentence.add(t);
                 }
             }
@@ -33,11 +33,16 @@ import opennlp.tools.sentdetect.SentenceModel;
 import opennlp.tools.tokenize.Tokenizer;
 import opennlp.tools.tokenize.TokenizerME;
 import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.tools.util.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -60,9 +65,88 @@ public class VaderNLP {
     // apache-nlp tokenizer
     private Tokenizer tokenizer;
 
+    // the loaded models, shared read-only between copies of this parser
+    private SentenceModel sentenceModel = null;
+    private TokenizerModel tokenizerModel = null;
+
+    // the emoticons and emoji kept together as single tokens (immutable, shared between copies)
+    private EmojiTable emojiTable = null;
+    private POSModel posModel = null;
+
+    // the SHA-256 of the loaded model files, and the fingerprint of the parser's output (see getFingerprint)
+    private byte[] modelDigest = null;
+    private String fingerprint = null;
+
     public VaderNLP() {
     }
 
+    /**
+     * create a new parser that shares this parser's loaded models - the OpenNLP
+     * detector, tokenizer and tagger instances are not thread-safe, so each thread
+     * needs its own copy, but the models themselves are immutable and can be shared
+     * @return a new parser ready for use on another thread
+     */
+    public VaderNLP copy() {
+        VaderNLP nlp = new VaderNLP();
+        nlp.sentenceModel = sentenceModel;
+        nlp.tokenizerModel = tokenizerModel;
+        nlp.posModel = posModel;
+        nlp.emojiTable = emojiTable;
+        nlp.modelDigest = modelDigest;
+        nlp.fingerprint = fingerprint;
+        nlp.sentenceDetector = new SentenceDetectorME(sentenceModel);
+        nlp.tokenizer = new TokenizerME(tokenizerModel);
+        if ( posModel != null ) {
+            nlp.posTagger = new POSTaggerME(posModel);
+        }
+        return nlp;
+    }
+
+    /**
+     * replace the emoticons and emoji the tokenizer keeps together (by default those of the
+     * resources Vader loads), e.g. with EmojiTable.fromLexicon(vader.getLexicon()) for a domain lexicon
+     * @param emojiTable the table, or null to tokenize emoticons and emoji like any other text
+     */
+    public void setEmojiTable( EmojiTable emojiTable ) {
+        this.emojiTable = emojiTable;
+        this.fingerprint = null;
+    }
+
+    /**
+     * a fingerprint of everything that decides what parse() returns for a text: the model files,
+     * whether there is a pos tagger and the emoji table - parses cached under a different
+     * fingerprint (see ParseCache) can't be re-used
+     * @return the fingerprint, a hex SHA-256
+     */
+    public String getFingerprint() {
+        if ( fingerprint == null ) {
+            MessageDigest digest = sha256();
+            if ( modelDigest != null ) {
+                digest.update(modelDigest);
+            }
+            digest.update((byte)(posTagger != null ? 1 : 0));
+            if ( emojiTable != null ) {
+                for ( int i = 0; i < emojiTable.size(); i++ ) {
+                    digest.update(emojiTable.getTerm(i).getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte)0);
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for ( byte b : digest.digest() ) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            fingerprint = sb.toString();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return true if this parser was initialised with a pos tagger
+     */
+    public boolean hasPosTagger() {
+        return posTagger != null;
+    }
+
     /**
      * convert a piece of text to a list of parsed tokens with POS tags
      * @param text the text to parse
@@ -78,30 +162,50 @@ public class VaderNLP {
             // this is how it works boys and girls - apache-opennlp
             String[] sentenceArray = getSentences(text);
             for (String sentenceStr : sentenceArray) {
+                sentenceList.add( parseSentence(sentenceStr) );
+            }
 
-                List<Token> sentence = new ArrayList<>();
+            return sentenceList;
+        }
+        return null;
+    }
 
-                // get the results of the syntactic parse
-                String[] words = getTokens(sentenceStr);
-                String[] posTags = getTags(words);
+    /**
+     * tokenize and tag a single sentence (as returned by the sentence detector)
+     * @param sentenceStr the sentence to parse
+     * @return the sentence as a list of tokens with POS tags (null tags if there is no tagger)
+     * @throws IOException if things don't go as planned
+     */
+    public List<Token> parseSentence( String sentenceStr ) throws IOException {
+        String[] words = getTokens(sentenceStr);
+        return toSentence(words, getTags(words));
+    }
 
-                // the number of tags should always match the number of words - a little primitive
-                // how open-nlp treats it
-                if ( words.length != posTags.length ) {
-                    throw new IOException("unmatched words / posTags in nlp-parser");
-                }
+    /**
+     * combine the words and tags of a sentence into a list of tokens
+     * @param words the words of the sentence
+     * @param posTags the tags of the sentence, or null if not tagged
+     * @return the sentence as a list of tokens
+     * @throws IOException if the words and tags don't match up
+     */
+    List<Token> toSentence( String[] words, String[] posTags ) throws IOException {
 
-                // add this sentence - the first word in the sentence gets the "is a sentence start" marker
-                for ( int i = 0; i < words.length; i++ ) {
-                    sentence.add( new Token( words[i], posTags[i]) );
-                }
+        // the number of tags should always match the number of words - a little primitive
+        // how open-nlp treats it
+        if ( posTags != null && words.length != posTags.length ) {
+            throw new IOException("unmatched words / posTags in nlp-parser");
+        }
 
-                sentenceList.add( sentence );
+        // add this sentence - the first word in the sentence gets the "is a sentence start" marker
+        List<Token> sentence = new ArrayList<>(words.length);
+        for ( int i = 0; i < words.length; i++ ) {
+            Token token = new Token( words[i], posTags != null ? posTags[i] : null);
+            if ( emojiTable != null && emojiTable.contains(words[i]) ) {
+                token.setEmoji(true);
             }
-
-            return sentenceList;
+            sentence.add( token );
         }
-        return null;
+        return sentence;
     }
 
     /**
@@ -109,26 +213,71 @@ public class VaderNLP {
      * @param text the text to split
      * @return a set of string representing nlp sentences
      */
-    private String[] getSentences(String text) {
+    String[] getSentences(String text) {
         return sentenceDetector.sentDetect(text);
     }
 
+    /**
+     * invoke the OpenNLP sentence detector to find the sentences of a text
+     * @param text the text to split
+     * @return the start / end offsets of the sentences in text
+     */
+    Span[] getSentenceSpans(String text) {
+        return sentenceDetector.sentPosDetect(text);
+    }
+
     /**
      * turn a sentence into a set of tokens (split words and punctuation etc)
      * @param sentence a string that is a sentence
      * @return a set of tokens from that sentence in order
      */
-    private String[] getTokens(String sentence) {
-        return tokenizer.tokenize(sentence);
+    String[] getTokens(String sentence) {
+        if ( emojiTable == null ) {
+            return tokenizer.tokenize(sentence);
+        }
+        int[] match = new int[2];
+        int matchStart = emojiTable.find(sentence, 0, match);
+        if ( matchStart < 0 ) {
+            return tokenizer.tokenize(sentence);
+        }
+
+        // the tokens, cut around the emoticons / emoji, which become tokens of their own
+        Span[] spanList = tokenizer.tokenizePos(sentence);
+        List<String> wordList = new ArrayList<>(spanList.length + 2);
+        int consumed = 0; // the end of the last emoticon / emoji
+        for ( Span span : spanList ) {
+            int start = Math.max(span.getStart(), consumed);
+            int end = span.getEnd();
+            while ( start < end ) {
+                if ( matchStart >= 0 && matchStart <= start ) {
+                    wordList.add(emojiTable.getTerm(match[1]));
+                    consumed = match[0];
+                    start = Math.max(start, consumed);
+                    matchStart = emojiTable.find(sentence, consumed, match);
+                    continue;
+                }
+                int pieceEnd = matchStart >= 0 ? Math.min(end, matchStart) : end;
+                wordList.add(sentence.substring(start, pieceEnd));
+                start = pieceEnd;
+            }
+        }
+        while ( matchStart >= 0 ) {
+            wordList.add(emojiTable.getTerm(match[1]));
+            matchStart = emojiTable.find(sentence, match[0], match);
+        }
+        return wordList.toArray(new String[0]);
     }
 
     /**
      * use a pos-tagger to get the set of penn-tree tags for a given set of tokens
      * that form a sentence
      * @param tokens a sentence split into tokens
-     * @return a set of penn-tags
+     * @return a set of penn-tags, or null if this parser has no pos tagger
      */
-    private String[] getTags(String[] tokens) {
+    String[] getTags(String[] tokens) {
+        if ( posTagger == null ) {
+            return null;
+        }
         return posTagger.tag(tokens);
     }
 
@@ -137,9 +286,20 @@ public class VaderNLP {
      * @throws IOException
      */
     public void init() throws IOException {
+        init(true);
+    }
+
+    /**
+     * initialise the parser and its constituents
+     * @param posTagging load the pos tagger (Vader's scoring doesn't use the tags)
+     * @throws IOException
+     */
+    public void init( boolean posTagging ) throws IOException {
 
         logger.debug("VaderNLP: init()");
 
+        MessageDigest digest = sha256();
+
         // setup the sentence splitter
         {
             logger.debug("VaderNLP: loading en-sent.bin");
@@ -147,7 +307,9 @@ public class VaderNLP {
                 if (modelIn == null) {
                     throw new IOException("resource en-sent.bin not found in classpath");
                 }
-                SentenceModel sentenceModel = new SentenceModel(modelIn);
+                DigestInputStream digestIn = new DigestInputStream(modelIn, digest);
+                sentenceModel = new SentenceModel(digestIn);
+                drain(digestIn);
                 sentenceDetector = new SentenceDetectorME(sentenceModel);
             }
         }
@@ -159,26 +321,50 @@ public class VaderNLP {
                 if ( modelIn == null ) {
                     throw new IOException("resource en-sent.bin not found in classpath");
                 }
-                TokenizerModel tokenizerModel = new TokenizerModel(modelIn);
+                DigestInputStream digestIn = new DigestInputStream(modelIn, digest);
+                tokenizerModel = new TokenizerModel(digestIn);
+                drain(digestIn);
                 tokenizer = new TokenizerME(tokenizerModel);
             }
         }
 
+        // the emoticons and emoji to keep together
+        emojiTable = EmojiTable.load();
+
         // setup the pos tagger
-        {
+        if ( posTagging ) {
             logger.debug("VaderNLP: loading en-pos-maxent.bin");
             try ( InputStream modelIn = getClass().getResourceAsStream("en-pos-maxent.bin") ) {
                 if (modelIn == null) {
                     throw new IOException("resource en-sent.bin not found in classpath");
                 }
-                POSModel posModel = new POSModel(modelIn);
+                DigestInputStream digestIn = new DigestInputStream(modelIn, digest);
+                posModel = new POSModel(digestIn);
+                drain(digestIn);
                 posTagger = new POSTaggerME(posModel);
             }
         }
 
+        modelDigest = digest.digest();
+        fingerprint = null;
 
     }
 
+    /**
+     * read a stream to its end, so that a digest of it covers the whole model file
+     */
+    private static void drain( InputStream in ) throws IOException {
+        byte[] buffer = new byte[8192];
+        while ( in.read(buffer) >= 0 ) {
+        }
+    }
 
-}
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch ( NoSuchAlgorithmException ex ) {
+            throw new IllegalStateException("SHA-256 not available", ex); // every jvm has it
+        }
+    }
 
+}
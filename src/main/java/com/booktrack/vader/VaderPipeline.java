@@ -0,0 +1,491 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import opennlp.tools.util.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * a staged, overlapped version of the parse / score loop in Main
+ *
+ *   documents -> detect -> tokenize -> (tag) -> score -> sink
+ *
+ * every stage runs on its own threads and hands its work to the next stage through
+ * a bounded lock-free RingBuffer.  a full queue makes the stage feeding it wait, so
+ * memory use stays fixed and the slowest stage sets the pace - give that stage more
+ * threads.  sentences the LexiconFilter shows to be free of sentiment words skip
+ * straight to the sink with a neutral score (and no tokens).  the sink runs on a
+ * single thread, so the consumer doesn't need to be thread-safe, and by default
+ * receives the sentences of each document in order - at most reorderWindow sentences
+ * are between the detect stage and the consumer then, so a slow sentence makes the
+ * detect stage wait rather than the sink buffer without limit.  a sentence (or document) a
+ * stage fails on still reaches the sink, as a ScoredSentence with the error and no
+ * score, so the sentences after it aren't held up and the consumer knows it is missing.
+ *
+ */
+public class VaderPipeline {
+
+    private static Logger logger = LoggerFactory.getLogger(VaderPipeline.class);
+
+    private final Vader vader;
+    private final VaderNLP vaderNLP;
+    private final Consumer<ScoredSentence> sink;
+
+    // number of threads per stage
+    private int detectThreads = 1;
+    private int tokenizeThreads = 1;
+    private int tagThreads = 1;
+    private int scoreThreads = 1;
+
+    // the capacity of each queue between stages
+    private int queueCapacity = 1024;
+
+    // run the pos tagger (only if the nlp parser has one loaded)
+    private boolean tagging = true;
+
+    // deliver the sentences of a document to the sink in sentence order
+    private boolean ordered = true;
+
+    // in ordered mode, the most sentences detected but not yet handed to the consumer
+    private int reorderWindow = 8192;
+
+    // send sentences without any possible sentiment word straight to the sink
+    private boolean prefilter = true;
+
+    private List<Stage> stageList;
+    private Stage firstStage;
+    private Stage sinkStage;
+    private Semaphore reorderPermits; // one per sentence in flight, in ordered mode
+
+    // numbers each submitted document, the sink orders the sentences of each submission
+    private final AtomicLong submissionCount = new AtomicLong();
+
+    // the first error of any stage, reported by close()
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * setup a pipeline
+     * @param vader an initialised vader, shared by all score threads
+     * @param vaderNLP an initialised nlp parser, copied for each nlp thread
+     * @param sink the receiver of all scored sentences
+     */
+    public VaderPipeline( Vader vader, VaderNLP vaderNLP, Consumer<ScoredSentence> sink ) {
+        this.vader = vader;
+        this.vaderNLP = vaderNLP;
+        this.sink = sink;
+    }
+
+    /**
+     * create the stages and start their threads
+     */
+    public void start() {
+        if ( stageList != null ) {
+            throw new IllegalStateException("pipeline already started");
+        }
+
+        reorderPermits = new Semaphore(reorderWindow);
+        sinkStage = new SinkStage();
+        Stage scoreStage = new ScoreStage(sinkStage);
+        Stage tokenizeStage;
+        if ( tagging && vaderNLP.hasPosTagger() ) {
+            Stage tagStage = new TagStage(scoreStage);
+            tokenizeStage = new TokenizeStage(tagStage);
+            stageList = Arrays.asList(new DetectStage(tokenizeStage), tokenizeStage, tagStage, scoreStage, sinkStage);
+        } else {
+            tokenizeStage = new TokenizeStage(scoreStage);
+            stageList = Arrays.asList(new DetectStage(tokenizeStage), tokenizeStage, scoreStage, sinkStage);
+        }
+        firstStage = stageList.get(0);
+        for ( Stage stage : stageList ) {
+            stage.start();
+        }
+    }
+
+    /**
+     * add a document to the pipeline, waiting if the pipeline is full
+     * @param documentId the id of the document, passed on to its sentences
+     * @param text the text of the document
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public void submit( String documentId, String text ) throws InterruptedException {
+        if ( firstStage == null ) {
+            throw new IllegalStateException("pipeline not started");
+        }
+        if ( text != null ) {
+            Item item = new Item();
+            item.submission = submissionCount.getAndIncrement();
+            item.documentId = documentId;
+            item.sentenceIndex = -1;
+            item.text = text;
+            firstStage.input.put(item);
+        }
+    }
+
+    /**
+     * finish processing all submitted documents and stop the threads
+     * @throws IOException if any stage failed while processing
+     * @throws InterruptedException if interrupted while waiting for the stages
+     */
+    public void close() throws IOException, InterruptedException {
+        if ( stageList != null ) {
+            // each stage can only finish after all the stages before it have finished
+            for ( Stage stage : stageList ) {
+                stage.close();
+            }
+        }
+        Throwable ex = failure.get();
+        if ( ex != null ) {
+            throw new IOException("pipeline failed: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @return the number of items waiting in front of each stage, keyed on stage name in pipeline order
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        if ( stageList != null ) {
+            for ( Stage stage : stageList ) {
+                depths.put(stage.name, stage.input.size());
+            }
+        }
+        return depths;
+    }
+
+    public void setDetectThreads(int detectThreads) {
+        this.detectThreads = Math.max(1, detectThreads);
+    }
+
+    public void setTokenizeThreads(int tokenizeThreads) {
+        this.tokenizeThreads = Math.max(1, tokenizeThreads);
+    }
+
+    public void setTagThreads(int tagThreads) {
+        this.tagThreads = Math.max(1, tagThreads);
+    }
+
+    public void setScoreThreads(int scoreThreads) {
+        this.scoreThreads = Math.max(1, scoreThreads);
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setTagging(boolean tagging) {
+        this.tagging = tagging;
+    }
+
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    public void setPrefilter(boolean prefilter) {
+        this.prefilter = prefilter;
+    }
+
+    public void setReorderWindow(int reorderWindow) {
+        this.reorderWindow = Math.max(1, reorderWindow);
+    }
+
+    /**
+     * a unit of work moving through the pipeline - a document before the detect stage,
+     * a sentence after it
+     */
+    private static class Item {
+        long submission;
+        String documentId;
+        int sentenceIndex; // -1 for a document
+        int sentenceCount;
+        int start; // of a sentence in its document
+        int end;
+        String text;
+        String[] words;
+        String[] tags;
+        List<Token> sentence;
+        VScore score;
+        Throwable error; // why a stage failed on this item, it then goes straight to the sink
+    }
+
+    /**
+     * a stage of the pipeline: an input queue and the threads that drain it
+     */
+    private abstract class Stage {
+
+        final String name;
+        final int threadCount;
+        final boolean needsNLP;
+        final RingBuffer<Item> input;
+        final Stage next;
+
+        private final List<Thread> threadList = new ArrayList<>();
+        private volatile boolean closed = false;
+
+        Stage( String name, int threadCount, boolean needsNLP, Stage next ) {
+            this.name = name;
+            this.threadCount = threadCount;
+            this.needsNLP = needsNLP;
+            this.next = next;
+            this.input = new RingBuffer<>(queueCapacity);
+        }
+
+        void start() {
+            for ( int i = 0; i < threadCount; i++ ) {
+                // the OpenNLP classes aren't thread-safe, each thread gets its own parser
+                final VaderNLP nlp = needsNLP ? vaderNLP.copy() : null;
+                Thread thread = new Thread(() -> run(nlp), "vader-" + name + "-" + i);
+                thread.setDaemon(true);
+                threadList.add(thread);
+                thread.start();
+            }
+        }
+
+        private void run( VaderNLP nlp ) {
+            int attempt = 0;
+            try {
+                while ( true ) {
+                    Item item = input.poll();
+                    if ( item != null ) {
+                        attempt = 0;
+                        try {
+                            process(item, nlp);
+                        } catch ( InterruptedException ex ) {
+                            throw ex;
+                        } catch ( Exception ex ) {
+                            logger.error("pipeline stage " + name + " failed on " + item.documentId + ": " + ex.getMessage());
+                            failure.compareAndSet(null, ex);
+                            if ( this != sinkStage ) {
+                                item.error = ex;
+                                item.score = null;
+                                sinkStage.input.put(item);
+                            }
+                        }
+                    } else if ( closed && input.isEmpty() ) {
+                        break;
+                    } else {
+                        RingBuffer.backoff(attempt++);
+                    }
+                }
+                finish();
+            } catch ( InterruptedException ex ) {
+                logger.error("pipeline stage " + name + " interrupted");
+                failure.compareAndSet(null, ex);
+            }
+        }
+
+        /**
+         * signal no more input will arrive and wait for the threads to drain the queue
+         */
+        void close() throws InterruptedException {
+            closed = true;
+            for ( Thread thread : threadList ) {
+                thread.join();
+            }
+        }
+
+        /**
+         * process a single item and pass on the result
+         * @param item the item to process
+         * @param nlp this thread's nlp parser, or null if the stage doesn't need one
+         */
+        abstract void process( Item item, VaderNLP nlp ) throws IOException, InterruptedException;
+
+        /**
+         * called on each thread after the last item was processed
+         */
+        void finish() {
+        }
+
+    }
+
+    /**
+     * split documents into sentences - sentences that can't contain a sentiment word
+     * are given their neutral score here and skip the nlp and score stages
+     */
+    private class DetectStage extends Stage {
+
+        DetectStage( Stage next ) {
+            super("detect", detectThreads, true, next);
+        }
+
+        void process( Item item, VaderNLP nlp ) throws InterruptedException {
+            boolean documentMayContainSentiment = !prefilter || vader.mayContainSentiment(item.text);
+            Span[] spanArray = nlp.getSentenceSpans(item.text);
+            for ( int i = 0; i < spanArray.length; i++ ) {
+                Item sentenceItem = new Item();
+                sentenceItem.submission = item.submission;
+                sentenceItem.documentId = item.documentId;
+                sentenceItem.sentenceIndex = i;
+                sentenceItem.sentenceCount = spanArray.length;
+                sentenceItem.start = spanArray[i].getStart();
+                sentenceItem.end = spanArray[i].getEnd();
+                sentenceItem.text = item.text.substring(sentenceItem.start, sentenceItem.end);
+                if ( ordered ) {
+                    // released when the sink emits the sentence.  the sentences before this one
+                    // already hold permits and are on their way, so the sink can always free some
+                    reorderPermits.acquire();
+                }
+                if ( prefilter ) {
+                    sentenceItem.score = documentMayContainSentiment ? vader.prescreen(sentenceItem.text) :
+                            LexiconFilter.neutralScore(sentenceItem.text);
+                }
+                if ( sentenceItem.score == null ) {
+                    next.input.put(sentenceItem);
+                } else {
+                    sinkStage.input.put(sentenceItem);
+                }
+            }
+        }
+    }
+
+    /**
+     * split sentences into words
+     */
+    private class TokenizeStage extends Stage {
+
+        TokenizeStage( Stage next ) {
+            super("tokenize", tokenizeThreads, true, next);
+        }
+
+        void process( Item item, VaderNLP nlp ) throws IOException, InterruptedException {
+            item.words = nlp.getTokens(item.text);
+            if ( !(next instanceof TagStage) ) {
+                item.sentence = nlp.toSentence(item.words, null);
+            }
+            next.input.put(item);
+        }
+    }
+
+    /**
+     * pos tag the words of a sentence
+     */
+    private class TagStage extends Stage {
+
+        TagStage( Stage next ) {
+            super("tag", tagThreads, true, next);
+        }
+
+        void process( Item item, VaderNLP nlp ) throws IOException, InterruptedException {
+            item.tags = nlp.getTags(item.words);
+            item.sentence = nlp.toSentence(item.words, item.tags);
+            next.input.put(item);
+        }
+    }
+
+    /**
+     * apply vader to a sentence
+     */
+    private class ScoreStage extends Stage {
+
+        ScoreStage( Stage next ) {
+            super("score", scoreThreads, false, next);
+        }
+
+        void process( Item item, VaderNLP nlp ) throws InterruptedException {
+            item.score = vader.analyseSentence(item.sentence);
+            next.input.put(item);
+        }
+    }
+
+    /**
+     * hand the scored sentences to the consumer, restoring sentence order if required
+     */
+    private class SinkStage extends Stage {
+
+        // the sentences waiting for an earlier sentence of their document, by submission
+        private final Map<Long, Pending> pendingMap = new HashMap<>();
+
+        SinkStage() {
+            super("sink", 1, false, null);
+        }
+
+        void process( Item item, VaderNLP nlp ) {
+            if ( !ordered || item.sentenceIndex < 0 ) {
+                // unordered, or a document that failed before it was split into sentences
+                emit(item);
+                return;
+            }
+            Pending pending = pendingMap.get(item.submission);
+            if ( pending == null ) {
+                pending = new Pending();
+                pendingMap.put(item.submission, pending);
+            }
+            pending.itemMap.put(item.sentenceIndex, item);
+            while ( !pending.itemMap.isEmpty() && pending.itemMap.firstKey() == pending.nextIndex ) {
+                emit(pending.itemMap.pollFirstEntry().getValue());
+                pending.nextIndex++;
+            }
+            if ( pending.nextIndex >= item.sentenceCount ) {
+                pendingMap.remove(item.submission);
+            }
+        }
+
+        void finish() {
+            // failed sentences are passed on too, so this is only left if a stage thread died
+            for ( Pending pending : pendingMap.values() ) {
+                for ( Item item : pending.itemMap.values() ) {
+                    emit(item);
+                }
+            }
+            pendingMap.clear();
+        }
+
+        private void emit( Item item ) {
+            if ( ordered && item.sentenceIndex >= 0 ) {
+                reorderPermits.release();
+            }
+            try {
+                ScoredSentence scoredSentence = new ScoredSentence(item.documentId, item.sentenceIndex, item.text, item.sentence, item.score);
+                if ( item.sentenceIndex >= 0 ) {
+                    scoredSentence.setStart(item.start);
+                    scoredSentence.setEnd(item.end);
+                }
+                scoredSentence.setError(item.error);
+                sink.accept(scoredSentence);
+            } catch ( RuntimeException ex ) {
+                logger.error("pipeline sink failed on " + item.documentId + ": " + ex.getMessage());
+                failure.compareAndSet(null, ex);
+            }
+        }
+    }
+
+    /**
+     * the out of order sentences of a single document
+     */
+    private static class Pending {
+        int nextIndex = 0;
+        TreeMap<Integer, Item> itemMap = new TreeMap<>();
+    }
+
+}
@@ -0,0 +1,365 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import opennlp.tools.util.Span;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a reactive streams Processor that takes documents and emits their scored sentences
+ *
+ * each document is parsed and scored as a single task on the given executor, and at most
+ * maxConcurrency documents are requested from upstream that haven't been fully delivered
+ * downstream yet - so no more than that many documents are ever being worked on or buffered.
+ * sentences are emitted in document order, and in sentence order within a document, and only
+ * as far as the downstream subscriber has requested them.  on java 9+ use
+ * org.reactivestreams.FlowAdapters.toFlowProcessor() to get a java.util.concurrent.Flow.Processor.
+ *
+ */
+public class VaderProcessor implements Processor<VaderDocument, ScoredSentence> {
+
+    private static Logger logger = LoggerFactory.getLogger(VaderProcessor.class);
+
+    private final Vader vader;
+    private final Executor executor;
+    private final int maxConcurrency;
+
+    // the OpenNLP classes aren't thread-safe, each executor thread gets its own parser
+    private final ThreadLocal<VaderNLP> nlpThreadLocal;
+
+    // the documents received from upstream, in arrival order
+    private final ConcurrentLinkedQueue<Job> jobQueue = new ConcurrentLinkedQueue<>();
+
+    private volatile Subscription upstream;
+    private volatile Subscriber<? super ScoredSentence> downstream;
+    private final AtomicBoolean hasDownstream = new AtomicBoolean(false);
+    private final AtomicBoolean startedUpstream = new AtomicBoolean(false);
+
+    // the outstanding downstream demand
+    private final AtomicLong requested = new AtomicLong();
+
+    // serialises all signals to downstream: only the thread that moves it off 0 drains
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean upstreamDone = false;
+    private volatile Throwable error = null;
+    private volatile boolean cancelled = false;
+    private boolean terminated = false; // only touched while draining
+
+    /**
+     * setup the processor
+     * @param vader an initialised vader
+     * @param vaderNLP an initialised nlp parser, copied for each executor thread
+     * @param executor the executor that parses and scores the documents
+     * @param maxConcurrency the maximum number of documents in flight
+     */
+    public VaderProcessor( Vader vader, VaderNLP vaderNLP, Executor executor, int maxConcurrency ) {
+        if ( maxConcurrency < 1 ) {
+            throw new IllegalArgumentException("maxConcurrency must be > 0");
+        }
+        this.vader = vader;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.nlpThreadLocal = ThreadLocal.withInitial(vaderNLP::copy);
+    }
+
+    @Override
+    public void subscribe( Subscriber<? super ScoredSentence> subscriber ) {
+        if ( subscriber == null ) {
+            throw new NullPointerException("subscriber can't be null");
+        }
+        if ( !hasDownstream.compareAndSet(false, true) ) {
+            subscriber.onSubscribe(new Subscription() {
+                public void request(long n) {
+                }
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("VaderProcessor only supports a single subscriber"));
+            return;
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new DownstreamSubscription());
+        requestUpstream();
+        drain();
+    }
+
+    @Override
+    public void onSubscribe( Subscription subscription ) {
+        if ( subscription == null ) {
+            throw new NullPointerException("subscription can't be null");
+        }
+        if ( upstream != null || cancelled ) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        requestUpstream();
+    }
+
+    @Override
+    public void onNext( VaderDocument document ) {
+        if ( document == null ) {
+            throw new NullPointerException("document can't be null");
+        }
+        if ( cancelled || upstreamDone ) {
+            return;
+        }
+        Job job = new Job(document);
+        jobQueue.add(job);
+        try {
+            executor.execute(job);
+        } catch ( RejectedExecutionException ex ) {
+            job.fail(ex);
+        }
+    }
+
+    @Override
+    public void onError( Throwable throwable ) {
+        if ( throwable == null ) {
+            throw new NullPointerException("throwable can't be null");
+        }
+        error = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * ask upstream for the first batch of documents once both sides are connected
+     */
+    private void requestUpstream() {
+        Subscription subscription = upstream;
+        if ( subscription != null && downstream != null && !cancelled ) {
+            // both onSubscribe and subscribe may get here, only one of them may ask
+            if ( startedUpstream.compareAndSet(false, true) ) {
+                subscription.request(maxConcurrency);
+            }
+        }
+    }
+
+    /**
+     * deliver whatever downstream has asked for and is ready, in order
+     */
+    private void drain() {
+        if ( wip.getAndIncrement() != 0 ) {
+            return;
+        }
+        int missed = 1;
+        while ( true ) {
+            Subscriber<? super ScoredSentence> subscriber = downstream;
+            if ( subscriber != null && !terminated ) {
+                if ( cancelled ) {
+                    jobQueue.clear();
+                } else {
+                    drainTo(subscriber);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if ( missed == 0 ) {
+                break;
+            }
+        }
+    }
+
+    private void drainTo( Subscriber<? super ScoredSentence> subscriber ) {
+        long emitted = 0;
+        long demand = requested.get();
+        int finishedDocuments = 0;
+        while ( !cancelled ) {
+            Throwable ex = error;
+            if ( ex != null ) {
+                terminate();
+                subscriber.onError(ex);
+                return;
+            }
+            Job job = jobQueue.peek();
+            if ( job == null ) {
+                if ( upstreamDone ) {
+                    terminate();
+                    subscriber.onComplete();
+                    return;
+                }
+                break;
+            }
+            if ( !job.done ) {
+                break;
+            }
+            if ( job.failure != null ) {
+                cancelUpstream();
+                terminate();
+                subscriber.onError(job.failure);
+                return;
+            }
+            if ( job.position < job.resultList.size() ) {
+                if ( emitted == demand ) {
+                    demand = requested.get(); // more may have been asked for since
+                    if ( emitted == demand ) {
+                        break;
+                    }
+                }
+                subscriber.onNext(job.resultList.get(job.position++));
+                emitted++;
+            }
+            if ( job.position >= job.resultList.size() ) {
+                jobQueue.poll();
+                finishedDocuments++;
+            }
+        }
+        if ( emitted > 0 && demand != Long.MAX_VALUE ) {
+            requested.addAndGet(-emitted);
+        }
+        // replace every document fully delivered with a new one
+        Subscription subscription = upstream;
+        if ( finishedDocuments > 0 && subscription != null && !upstreamDone && !cancelled ) {
+            subscription.request(finishedDocuments);
+        }
+    }
+
+    private void terminate() {
+        terminated = true;
+        jobQueue.clear();
+    }
+
+    private void cancelUpstream() {
+        Subscription subscription = upstream;
+        if ( subscription != null ) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * the subscription handed to downstream
+     */
+    private class DownstreamSubscription implements Subscription {
+
+        @Override
+        public void request( long n ) {
+            if ( n <= 0 ) {
+                error = new IllegalArgumentException("request must be > 0 (reactive streams rule 3.9)");
+                cancelUpstream();
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n;
+                    if ( next < 0 ) {
+                        next = Long.MAX_VALUE; // unbounded
+                    }
+                } while ( !requested.compareAndSet(current, next) );
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if ( !cancelled ) {
+                cancelled = true;
+                cancelUpstream();
+                drain();
+            }
+        }
+    }
+
+    /**
+     * the parse and score of a single document
+     */
+    private class Job implements Runnable {
+
+        private final VaderDocument document;
+        private List<ScoredSentence> resultList; // published by the volatile write of done
+        private Throwable failure;
+        private volatile boolean done = false;
+        private int position = 0; // the next sentence to emit, only touched while draining
+
+        Job( VaderDocument document ) {
+            this.document = document;
+        }
+
+        @Override
+        public void run() {
+            if ( cancelled ) {
+                return;
+            }
+            try {
+                VaderNLP nlp = nlpThreadLocal.get();
+                List<ScoredSentence> scoredList = new ArrayList<>();
+                String text = document.getText();
+                if ( text != null ) {
+                    Span[] spanArray = nlp.getSentenceSpans(text);
+                    for ( int i = 0; i < spanArray.length; i++ ) {
+                        String sentenceStr = text.substring(spanArray[i].getStart(), spanArray[i].getEnd());
+                        VScore score = vader.prescreen(sentenceStr);
+                        ScoredSentence scoredSentence;
+                        if ( score == null ) {
+                            List<Token> sentence = nlp.parseSentence(sentenceStr);
+                            scoredSentence = new ScoredSentence(document.getId(), i, sentenceStr, sentence, vader.analyseSentence(sentence));
+                        } else {
+                            scoredSentence = new ScoredSentence(document.getId(), i, sentenceStr, null, score);
+                        }
+                        scoredSentence.setStart(spanArray[i].getStart());
+                        scoredSentence.setEnd(spanArray[i].getEnd());
+                        scoredList.add(scoredSentence);
+                    }
+                }
+                resultList = scoredList;
+                done = true;
+            } catch ( Exception ex ) {
+                logger.error("VaderProcessor failed on " + document.getId() + ": " + ex.getMessage());
+                fail(ex);
+                return;
+            }
+            drain();
+        }
+
+        void fail( Throwable ex ) {
+            resultList = new ArrayList<>();
+            failure = ex;
+            done = true;
+            drain();
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * the sentence-level part of the vader algorithm with the (incubating) Vector API - loaded
+ * by SentenceAggregator.getInstance() from the Java 17 part of the multi-release jar
+ *
+ * each lane of a vector scores a sentence of the batch: the word scores of a group of sentences
+ * are first transposed word by word into a scratch array (so step k of the loop loads the k-th
+ * word score of every sentence of the group with a plain load, masked to the sentences that
+ * have that many words - a gather is no faster here, and masked gathers aren't reliable on all
+ * Java 17 updates).  each lane so adds up its sentence in word order with the same IEEE
+ * operations as the scalar code (no fused multiply-add, and a correctly rounded sqrt), and the
+ * scores are bit-identical.  the sentences left over after the last full group are scored by
+ * the scalar code.
+ *
+ */
+public class VectorSentenceAggregator extends SentenceAggregator {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    public VectorSentenceAggregator() {
+    }
+
+    @Override
+    public void aggregate( SentenceBatch batch ) {
+        int lanes = SPECIES.length();
+        double[] scoreArray = batch.scoreArray;
+        int[] offsetArray = batch.offsetArray;
+
+        // the per sentence inputs of a group, as doubles
+        double[] lengthArray = new double[lanes];
+        double[] butArray = new double[lanes];
+        double[] emArray = new double[lanes];
+        double[] qmArray = new double[lanes];
+        double[] wordArray = new double[lanes * 64]; // word k of sentence j at k * lanes + j
+
+        int i = 0;
+        for ( ; i + lanes <= batch.size; i += lanes ) {
+            int maxLength = 0;
+            for ( int j = 0; j < lanes; j++ ) {
+                int length = offsetArray[i + j + 1] - offsetArray[i + j];
+                maxLength = Math.max(maxLength, length);
+                lengthArray[j] = length;
+                butArray[j] = batch.butArray[i + j];
+                emArray[j] = (double)Math.min(4, batch.exclamationArray[i + j]) * 0.292;
+                int qmCount = batch.questionArray[i + j];
+                qmArray[j] = qmCount > 1 ? (qmCount <= 3 ? (double)qmCount * 0.18 : 0.96) : 0.0;
+            }
+            if ( wordArray.length < maxLength * lanes ) {
+                wordArray = new double[Math.max(maxLength * lanes, wordArray.length * 2)];
+            }
+            for ( int j = 0; j < lanes; j++ ) {
+                int offset = offsetArray[i + j];
+                int length = offsetArray[i + j + 1] - offset;
+                for ( int k = 0; k < maxLength; k++ ) {
+                    wordArray[k * lanes + j] = k < length ? scoreArray[offset + k] : 0.0;
+                }
+            }
+            DoubleVector length = DoubleVector.fromArray(SPECIES, lengthArray, 0);
+            DoubleVector butIndex = DoubleVector.fromArray(SPECIES, butArray, 0);
+            DoubleVector emAmplifier = DoubleVector.fromArray(SPECIES, emArray, 0);
+            DoubleVector qmAmplifier = DoubleVector.fromArray(SPECIES, qmArray, 0);
+            VectorMask<Double> hasBut = butIndex.compare(VectorOperators.GE, 0.0);
+            DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+
+            DoubleVector sum = DoubleVector.zero(SPECIES);
+            DoubleVector posSum = sum;
+            DoubleVector negSum = sum;
+            DoubleVector neutralCount = sum;
+            for ( int k = 0; k < maxLength; k++ ) {
+                VectorMask<Double> live = length.compare(VectorOperators.GT, (double)k);
+                DoubleVector v = DoubleVector.fromArray(SPECIES, wordArray, k * lanes);
+
+                // "but": words before it count half, words after it one and a half
+                DoubleVector weight = one
+                        .blend(0.5, hasBut.and(butIndex.compare(VectorOperators.GT, (double)k)))
+                        .blend(1.5, hasBut.and(butIndex.compare(VectorOperators.LT, (double)k)));
+                v = v.mul(weight);
+
+                sum = sum.add(v, live);
+                VectorMask<Double> positive = v.compare(VectorOperators.GT, 0.0).and(live);
+                posSum = posSum.add(v, positive).add(1.0, positive);
+                VectorMask<Double> negative = v.compare(VectorOperators.LT, 0.0).and(live);
+                negSum = negSum.add(v, negative).sub(1.0, negative);
+                neutralCount = neutralCount.add(1.0, v.compare(VectorOperators.EQ, 0.0).and(live));
+            }
+
+            // the exclamation and question mark amplifiers push the sum away from 0
+            VectorMask<Double> sumPositive = sum.compare(VectorOperators.GT, 0.0);
+            VectorMask<Double> sumNegative = sum.compare(VectorOperators.LT, 0.0);
+            sum = sum.add(emAmplifier, sumPositive).sub(emAmplifier, sumNegative);
+            sumPositive = sum.compare(VectorOperators.GT, 0.0);
+            sumNegative = sum.compare(VectorOperators.LT, 0.0);
+            sum = sum.add(qmAmplifier, sumPositive).sub(qmAmplifier, sumNegative);
+
+            DoubleVector compound = sum.div(sum.mul(sum).add(ALPHA).sqrt());
+
+            // adjust amplifiers
+            DoubleVector absNegSum = negSum.abs();
+            VectorMask<Double> morePositive = posSum.compare(VectorOperators.GT, absNegSum);
+            VectorMask<Double> moreNegative = posSum.compare(VectorOperators.LT, absNegSum);
+            posSum = posSum.add(qmAmplifier, morePositive).add(emAmplifier, morePositive);
+            negSum = negSum.sub(qmAmplifier.add(emAmplifier), moreNegative);
+
+            DoubleVector total = posSum.add(negSum.abs()).add(neutralCount);
+            VectorMask<Double> valid = total.compare(VectorOperators.GT, 0.0);
+            DoubleVector zero = DoubleVector.zero(SPECIES);
+            zero.blend(posSum.div(total).abs(), valid).intoArray(batch.positiveArray, i);
+            zero.blend(neutralCount.div(total).abs(), valid).intoArray(batch.neutralArray, i);
+            zero.blend(negSum.div(total).abs(), valid).intoArray(batch.negativeArray, i);
+            compound.intoArray(batch.compoundArray, i);
+        }
+        aggregate(batch, i);
+    }
+
+}
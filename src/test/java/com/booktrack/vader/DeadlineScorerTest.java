@@ -0,0 +1,81 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * a text scored within its budget has the same average whatever order its sentences are scored in
+ *
+ */
+public class DeadlineScorerTest {
+
+    private static Vader vader;
+    private static VaderNLP vaderNLP;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        vaderNLP = new VaderNLP();
+        vaderNLP.init(false);
+        vader = new Vader();
+        vader.init();
+    }
+
+    @Test
+    public void testCompleteMatchesParse() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < 40; i++ ) {
+            sb.append(i % 4 == 0 ? "It was a wonderful day. " : i % 4 == 1 ? "Chapter " + i + ".\n" :
+                    i % 4 == 2 ? "We hated the cold rain! " : "The door was open. ");
+        }
+        String text = sb.toString();
+        VScore expected = new IncrementalDocument(vader, vaderNLP, text).getAverage();
+
+        for ( DeadlineScorer.Strategy strategy : DeadlineScorer.Strategy.values() ) {
+            DeadlineScorer scorer = new DeadlineScorer(vader, vaderNLP);
+            scorer.setStrategy(strategy);
+            DeadlineScorer.Result result = scorer.score(text, 60000);
+            assertTrue(strategy.toString(), result.isComplete());
+            assertFalse(strategy.toString(), result.isSampled());
+            assertEquals(strategy.toString(), expected.getCompound(), result.getAverage().getCompound(), 1e-9);
+            assertEquals(strategy.toString(), expected.getPositive(), result.getAverage().getPositive(), 1e-9);
+            assertEquals(strategy.toString(), expected.getNegative(), result.getAverage().getNegative(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testNoBudget() throws Exception {
+        DeadlineScorer.Result result = new DeadlineScorer(vader, vaderNLP).score("I love it. I hate it.", 0);
+        assertFalse(result.isComplete());
+        assertEquals(0, result.getScoredCount());
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * emoticons have to be told apart from the same characters in ordinary prose
+ *
+ */
+public class EmojiTableTest {
+
+    private static VaderNLP vaderNLP;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        vaderNLP = new VaderNLP();
+        vaderNLP.init(false);
+    }
+
+    @Test
+    public void testBracketsInProse() throws Exception {
+        assertFalse(hasEmoji("(8 of them were there)"));
+        assertFalse(hasEmoji("There were (up to 8) of them."));
+        assertFalse(hasEmoji("They came in 8) and left."));
+        assertFalse(hasEmoji("(8 of them. Were there"));
+    }
+
+    @Test
+    public void testEmoticons() throws Exception {
+        assertTrue(hasEmoji("See you 8)"));
+        assertTrue(hasEmoji("so happy (:"));
+        assertTrue(hasEmoji("thanks (: see you"));
+        assertTrue(hasEmoji("(I loved it :)"));
+        assertEquals(Arrays.asList("so", "happy", "(:"), values(vaderNLP.parseSentence("so happy (:")));
+    }
+
+    private static boolean hasEmoji( String text ) throws Exception {
+        for ( Token token : vaderNLP.parseSentence(text) ) {
+            if ( token.isEmoji() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> values( List<Token> sentence ) {
+        String[] valueArray = new String[sentence.size()];
+        for ( int i = 0; i < valueArray.length; i++ ) {
+            valueArray[i] = sentence.get(i).getValue();
+        }
+        return Arrays.asList(valueArray);
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * the prescreen (LexiconFilter and neutralScore) must give the score a full parse gives
+ *
+ */
+public class LexiconFilterTest {
+
+    private static Vader vader;
+    private static VaderNLP vaderNLP;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        vader = new Vader();
+        vader.init();
+        vaderNLP = new VaderNLP();
+        vaderNLP.init(false);
+    }
+
+    @Test
+    public void testPrescreenMatchesParse() throws Exception {
+        String[] sentenceList = {
+                "1.", "!!", "?!", "1)", "...", "--", "I.", "12", "a-b", "A b c.", "IV.", "* * *",
+                "We walked to the store.", "The train left the station at noon.", "Chapter 12",
+                "(8 of them were there)", "☺", "x ☺", "", " "
+        };
+        for ( String sentence : sentenceList ) {
+            VScore expected = vader.analyseSentence(vaderNLP.parseSentence(sentence));
+            VScore prescreened = vader.prescreen(sentence);
+            if ( prescreened != null ) {
+                assertEquals(sentence, expected.toString(), prescreened.toString());
+            }
+            assertEquals(sentence, expected.toString(), vader.analyseSentence(sentence, vaderNLP).toString());
+        }
+    }
+
+    @Test
+    public void testWordBoundaries() {
+        assertFalse(vader.mayContainSentiment("We walked to the store."));
+        assertFalse(vader.mayContainSentiment("The train left the station at noon."));
+        assertTrue(vader.mayContainSentiment("It is no good"));
+
+        LexiconFilter filter = new LexiconFilter(Arrays.asList("no", "ca", ":)"));
+        assertFalse(filter.mayContain("I cannot know"));
+        assertTrue(filter.mayContain("No, not now"));
+        assertTrue(filter.mayContain("(no)"));
+        assertTrue(filter.mayContain("I can't")); // ca|n't
+        assertTrue(filter.mayContain("smile:)"));
+    }
+
+    @Test
+    public void testNeutralScore() {
+        assertEquals(null, LexiconFilter.neutralScore("1."));
+        assertEquals(null, LexiconFilter.neutralScore("!!"));
+        assertEquals(0.0, LexiconFilter.neutralScore("a . b").getNeutral(), 0.0);
+        assertEquals(1.0, LexiconFilter.neutralScore("Chapter 12.").getNeutral(), 0.0);
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+    The MIT License (MIT)
+
+    Copyright (c) 2014 cjhutto
+    Copyright (c) 2016 Rock de Vocht, booktrack.com
+
+    Permission is hereby granted, free of charge, to any person obtaining a copy
+    of this software and associated documentation files (the "Software"), to deal
+    in the Software without restriction, including without limitation the rights
+    to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+    copies of the Software, and to permit persons to whom the Software is
+    furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all
+    copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+    LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+
+ */
+package com.booktrack.vader;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * the pipeline has to deliver every sentence, in order, whatever its reorder window
+ *
+ */
+public class VaderPipelineTest {
+
+    private static Vader vader;
+    private static VaderNLP vaderNLP;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        vaderNLP = new VaderNLP();
+        vaderNLP.init(false);
+        vader = new Vader();
+        vader.init();
+    }
+
+    @Test(timeout = 60000)
+    public void testSmallReorderWindow() throws Exception {
+        Map<String, String> documentMap = new HashMap<>();
+        for ( int d = 0; d < 20; d++ ) {
+            StringBuilder sb = new StringBuilder();
+            for ( int i = 0; i < 50; i++ ) {
+                sb.append(i % 3 == 0 ? "It was a good day. " : i % 3 == 1 ? "Chapter " + i + ". " : "We hated the rain! ");
+            }
+            documentMap.put("doc" + d, sb.toString());
+        }
+
+        Map<String, List<ScoredSentence>> resultMap = new HashMap<>();
+        VaderPipeline pipeline = new VaderPipeline(vader, vaderNLP, scoredSentence ->
+                resultMap.computeIfAbsent(scoredSentence.getDocumentId(), id -> new ArrayList<>()).add(scoredSentence));
+        pipeline.setReorderWindow(2);
+        pipeline.setDetectThreads(2);
+        pipeline.setScoreThreads(4);
+        pipeline.setQueueCapacity(4);
+        pipeline.start();
+        for ( int d = 0; d < 20; d++ ) {
+            pipeline.submit("doc" + d, documentMap.get("doc" + d));
+        }
+        pipeline.close();
+
+        assertEquals(20, resultMap.size());
+        for ( Map.Entry<String, List<ScoredSentence>> entry : resultMap.entrySet() ) {
+            String text = documentMap.get(entry.getKey());
+            List<ScoredSentence> sentenceList = entry.getValue();
+            assertEquals(vaderNLP.getSentences(text).length, sentenceList.size());
+            for ( int i = 0; i < sentenceList.size(); i++ ) {
+                ScoredSentence scoredSentence = sentenceList.get(i);
+                assertEquals(i, scoredSentence.getSentenceIndex());
+                assertNull(scoredSentence.getError());
+                assertEquals(scoredSentence.getText(), text.substring(scoredSentence.getStart(), scoredSentence.getEnd()));
+            }
+        }
+    }
+
+}